@@ -0,0 +1,179 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Collects the statistics needed to tell how well clients reuse their connections to the {@link PropertyServiceServer}. <br>
+ * Connections are counted per network connection (end point) and not per {@link Connection} object, a h2c upgrade replaces the HTTP/1.1 connection with a
+ * HTTP/2 connection on the same end point which otherwise would be counted twice. <br>
+ * Requests to the monitoring paths (<i>/health</i> and <i>/metrics</i>) are not counted as they would otherwise skew the figures for the actual API.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class ConnectionMetrics extends HandlerWrapper implements Connection.Listener {
+
+	/** Path prefixes of requests not counted */
+	private static final List<String> MONITORING_PATHS = Arrays.asList("/health", "/metrics");
+
+	/** The open end points and the time (nanos) they were opened */
+	private final Map<EndPoint, Long> openEndPoints = new ConcurrentHashMap<>();
+
+	private final AtomicLong connections = new AtomicLong();
+
+	private final LongAccumulator connectionsOpenMax = new LongAccumulator(Math::max, 0);
+
+	private final AtomicLong closedConnections = new AtomicLong();
+
+	private final AtomicLong connectionDurationTotal = new AtomicLong();
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private final AtomicLong requestTimeTotal = new AtomicLong();
+
+	private final LongAccumulator requestTimeMax = new LongAccumulator(Math::max, 0);
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jetty.io.Connection.Listener#onOpened(org.eclipse.jetty.io.Connection)
+	 */
+	@Override
+	public void onOpened(Connection connection) {
+		if (openEndPoints.putIfAbsent(connection.getEndPoint(), System.nanoTime()) == null) {
+			connections.incrementAndGet();
+			connectionsOpenMax.accumulate(openEndPoints.size());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jetty.io.Connection.Listener#onClosed(org.eclipse.jetty.io.Connection)
+	 */
+	@Override
+	public void onClosed(Connection connection) {
+		EndPoint endPoint = connection.getEndPoint();
+		// the end point is still open if the connection was replaced by an upgrade
+		if (endPoint.isOpen()) {
+			return;
+		}
+		Long opened = openEndPoints.remove(endPoint);
+		if (opened != null) {
+			closedConnections.incrementAndGet();
+			connectionDurationTotal.addAndGet(System.nanoTime() - opened);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jetty.server.handler.HandlerWrapper#handle(java.lang.String, org.eclipse.jetty.server.Request, javax.servlet.http.HttpServletRequest,
+	 * javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+		if (MONITORING_PATHS.stream().anyMatch(target::startsWith)) {
+			super.handle(target, baseRequest, request, response);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			super.handle(target, baseRequest, request, response);
+		} finally {
+			long time = System.nanoTime() - start;
+			requests.incrementAndGet();
+			requestTimeTotal.addAndGet(time);
+			requestTimeMax.accumulate(time);
+		}
+	}
+
+	/**
+	 * @return The total number of connections (end points) opened
+	 */
+	long connections() {
+		return connections.get();
+	}
+
+	/**
+	 * @return The number of currently open connections
+	 */
+	int connectionsOpen() {
+		return openEndPoints.size();
+	}
+
+	/**
+	 * @return The max number of simultaneously open connections
+	 */
+	long connectionsOpenMax() {
+		return connectionsOpenMax.get();
+	}
+
+	/**
+	 * @return The mean duration in millis of the closed connections
+	 */
+	double connectionDurationMean() {
+		long closed = closedConnections.get();
+		return closed > 0 ? connectionDurationTotal.get() / 1e6 / closed : 0d;
+	}
+
+	/**
+	 * @return The total number of (non-monitoring) requests
+	 */
+	long requests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return The mean number of (non-monitoring) requests per connection
+	 */
+	double requestsPerConnection() {
+		long total = connections.get();
+		return total > 0 ? (double) requests.get() / total : 0d;
+	}
+
+	/**
+	 * @return The mean time in millis of the (non-monitoring) requests
+	 */
+	double requestTimeMean() {
+		long total = requests.get();
+		return total > 0 ? requestTimeTotal.get() / 1e6 / total : 0d;
+	}
+
+	/**
+	 * @return The max time in millis of the (non-monitoring) requests
+	 */
+	double requestTimeMax() {
+		return requestTimeMax.get() / 1e6;
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.TryCompanion.Success;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javascalautils.Try;
+
+import org.dmonix.servlet.JSONServlet;
+import org.dmonix.servlet.Request;
+import org.dmonix.servlet.Response;
+import org.eclipse.jetty.io.ConnectionStatistics;
+
+/**
+ * Exposes connection statistics of the {@link PropertyServiceServer} as JSON. <br>
+ * The <i>requestsPerConnection</i> value shows how well clients reuse connections, either by HTTP/1.1 keep-alive or by multiplexing HTTP/2 streams. <br>
+ * All times are in millis.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class ConnectionMetricsServlet extends JSONServlet {
+
+	private static final long serialVersionUID = 3204418795364807126L;
+
+	private final transient ConnectionMetrics connectionMetrics;
+
+	private final transient ConnectionStatistics connectionStatistics;
+
+	ConnectionMetricsServlet(ConnectionMetrics connectionMetrics, ConnectionStatistics connectionStatistics) {
+		this.connectionMetrics = connectionMetrics;
+		this.connectionStatistics = connectionStatistics;
+	}
+
+	/**
+	 * Lists the current connection statistics.
+	 */
+	@Override
+	protected Try<Response> getWithTry(Request req) {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("connections", connectionMetrics.connections());
+		metrics.put("connectionsOpen", connectionMetrics.connectionsOpen());
+		metrics.put("connectionsOpenMax", connectionMetrics.connectionsOpenMax());
+		metrics.put("connectionDurationMean", connectionMetrics.connectionDurationMean());
+		metrics.put("requests", connectionMetrics.requests());
+		metrics.put("requestsPerConnection", connectionMetrics.requestsPerConnection());
+		metrics.put("requestTimeMean", connectionMetrics.requestTimeMean());
+		metrics.put("requestTimeMax", connectionMetrics.requestTimeMax());
+		metrics.put("receivedBytes", connectionStatistics.getReceivedBytes());
+		metrics.put("sentBytes", connectionStatistics.getSentBytes());
+		return Success(ObjectResponse(metrics));
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.OptionCompanion.Option;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Readiness/health endpoint for the {@link PropertyServiceServlet}. <br>
+ * Responds with the full status as JSON, the HTTP status is <i>OK 200</i> if the service is ready to serve traffic else <i>SERVICE_UNAVAILABLE 503</i>.
+ * <br>
+ * The status is taken once per request, hence the <i>ready</i> flag in the body always matches the HTTP status. <br>
+ * Written directly on the servlet API as the response of a <i>JSONServlet</i> can't carry an object body together with a non-OK status.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+@WebServlet(name = "PropertyServiceHealth", displayName = "RESTful ZooKeeper Properties Health", description = "Readiness of the RESTful interface for properties stored in ZooKeeper", urlPatterns = {
+		"/health" })
+public final class HealthServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -1203716829263151385L;
+
+	/**
+	 * Reports the health of the {@link PropertyServiceServlet}.
+	 */
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		Map<String, Object> status = Option((ServiceHealth) getServletContext().getAttribute(ServiceHealth.ATTRIBUTE_NAME))
+				.map(ServiceHealth::status)
+				.getOrElse(() -> Collections.singletonMap("ready", false));
+
+		resp.setStatus(Boolean.TRUE.equals(status.get("ready")) ? SC_OK : SC_SERVICE_UNAVAILABLE);
+		resp.setContentType("application/json");
+		resp.setCharacterEncoding(UTF_8.name());
+		resp.getWriter().write(toJson(status));
+	}
+
+	/**
+	 * Renders the status as JSON, supports the value types found in the status, i.e. maps, strings, numbers and booleans.
+	 * @param value The value to render
+	 * @return The JSON
+	 */
+	static String toJson(Object value) {
+		if (value instanceof Map) {
+			return ((Map<?, ?>) value).entrySet().stream().map(e -> toJson(String.valueOf(e.getKey())) + ":" + toJson(e.getValue()))
+					.collect(Collectors.joining(",", "{", "}"));
+		}
+		if (value instanceof String) {
+			StringBuilder sb = new StringBuilder("\"");
+			for (char c : ((String) value).toCharArray()) {
+				if (c == '"' || c == '\\') {
+					sb.append('\\').append(c);
+				} else if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+			return sb.append('"').toString();
+		}
+		return String.valueOf(value);
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.TryCompanion.Success;
+import static javascalautils.TryCompanion.Try;
+import static org.apache.zookeeper.CreateMode.PERSISTENT;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the final state of a number of property sets using ZooKeeper <i>multi</i> transactions. <br>
+ * The znodes are laid out the same way as done by <a href="https://github.com/pnerg/zookeeper-properties">zookeeper-properties</a>, i.e. one znode per set
+ * under the root path and one child znode per property holding the value. <br>
+ * All operations for a single set are always in the same transaction, the sets are split into as few transactions as the max transaction size allows. <br>
+ * A set that on its own exceeds the max transaction size is not written at all and gets no result, it is left to the caller to write it by other means.
+ * Sending it would risk exceeding the <i>jute.maxbuffer</i> of ZooKeeper, which makes the server drop the connection and with it any other ongoing
+ * operation on the session.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class MultiWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(MultiWriter.class);
+
+	/** Rough estimate of the size of an operation excluding the path and data */
+	private static final int OP_OVERHEAD_BYTES = 64;
+
+	private final ZooKeeperSession session;
+
+	private final String rootPath;
+
+	private final Function<PropertySet, PropertySet> encoder;
+
+	private final int maxTransactionBytes;
+
+	/**
+	 * Creates the writer.
+	 * @param session The ZooKeeper session to write with
+	 * @param rootPath The root path of the property sets
+	 * @param encoder Encodes the values of a set into the format stored in ZooKeeper
+	 * @param maxTransactionBytes The max (estimated) size in bytes of a single transaction
+	 */
+	MultiWriter(ZooKeeperSession session, String rootPath, Function<PropertySet, PropertySet> encoder, int maxTransactionBytes) {
+		this.session = session;
+		this.rootPath = rootPath;
+		this.encoder = encoder;
+		this.maxTransactionBytes = maxTransactionBytes;
+	}
+
+	/**
+	 * Writes the provided sets.
+	 * @param states The new state per set name, None meaning the set is to be deleted
+	 * @return The result per set name, sets too large for a single transaction have no result
+	 */
+	Map<String, Try<Unit>> commit(Map<String, Option<PropertySet>> states) {
+		Map<String, Try<Unit>> results = new LinkedHashMap<>();
+		Try<ZooKeeper> zooKeeper = session.get();
+
+		Transaction transaction = new Transaction();
+		states.forEach((name, state) -> {
+			Try<SetOps> setOps = zooKeeper.flatMap(zk -> Try(() -> ops(zk, name, state)));
+			if (setOps.isFailure()) {
+				results.put(name, setOps.map(u -> Unit.Instance));
+				return;
+			}
+			SetOps ops = setOps.orNull();
+			if (ops.bytes > maxTransactionBytes) {
+				logger.debug("The property set [{}] of [{}] bytes exceeds the max transaction size", name, ops.bytes);
+				return;
+			}
+			if (!transaction.isEmpty() && transaction.bytes + ops.bytes > maxTransactionBytes) {
+				results.putAll(transaction.commit(zooKeeper));
+				transaction.clear();
+			}
+			transaction.add(ops);
+		});
+		results.putAll(transaction.commit(zooKeeper));
+		return results;
+	}
+
+	/**
+	 * Creates the operations needed to turn the stored set into the provided state.
+	 * @param zk The ZooKeeper handle, used to read the currently stored properties
+	 * @param name The name of the set
+	 * @param state The new state, None meaning the set is to be deleted
+	 * @return The operations
+	 * @throws KeeperException
+	 * @throws InterruptedException
+	 */
+	private SetOps ops(ZooKeeper zk, String name, Option<PropertySet> state) throws KeeperException, InterruptedException {
+		String setPath = rootPath + "/" + name;
+		SetOps ops = new SetOps(name);
+
+		List<String> children;
+		try {
+			children = zk.getChildren(setPath, false);
+		} catch (KeeperException.NoNodeException ex) {
+			children = null;
+		}
+
+		if (!state.isDefined()) {
+			if (children != null) {
+				children.forEach(child -> ops.delete(setPath + "/" + child));
+				ops.delete(setPath);
+			}
+			return ops;
+		}
+
+		Map<String, String> properties = encoder.apply(state.get()).asMap();
+		if (children == null) {
+			ops.create(setPath, new byte[0]);
+		} else {
+			children.stream().filter(child -> !properties.containsKey(child)).forEach(child -> ops.delete(setPath + "/" + child));
+		}
+		List<String> existing = children;
+		properties.forEach((k, v) -> {
+			String path = setPath + "/" + k;
+			byte[] data = v.getBytes(UTF_8);
+			if (existing != null && existing.contains(k)) {
+				ops.setData(path, data);
+			} else {
+				ops.create(path, data);
+			}
+		});
+		return ops;
+	}
+
+	/**
+	 * The operations for a single set.
+	 */
+	private static final class SetOps {
+		private final String name;
+		private final List<Op> ops = new ArrayList<>();
+		private int bytes;
+
+		private SetOps(String name) {
+			this.name = name;
+		}
+
+		private void create(String path, byte[] data) {
+			add(Op.create(path, data, OPEN_ACL_UNSAFE, PERSISTENT), path, data.length);
+		}
+
+		private void setData(String path, byte[] data) {
+			add(Op.setData(path, data, -1), path, data.length);
+		}
+
+		private void delete(String path) {
+			add(Op.delete(path, -1), path, 0);
+		}
+
+		private void add(Op op, String path, int dataLength) {
+			ops.add(op);
+			bytes += OP_OVERHEAD_BYTES + path.length() + dataLength;
+		}
+	}
+
+	/**
+	 * The operations for a number of sets to be committed in a single <i>multi</i>.
+	 */
+	private static final class Transaction {
+		private final List<String> names = new ArrayList<>();
+		private final List<Op> ops = new ArrayList<>();
+		private int bytes;
+
+		private boolean isEmpty() {
+			return names.isEmpty();
+		}
+
+		private void add(SetOps setOps) {
+			names.add(setOps.name);
+			ops.addAll(setOps.ops);
+			bytes += setOps.bytes;
+		}
+
+		private void clear() {
+			names.clear();
+			ops.clear();
+			bytes = 0;
+		}
+
+		private Map<String, Try<Unit>> commit(Try<ZooKeeper> zooKeeper) {
+			// e.g. deleting sets that don't exist
+			Try<Unit> result = ops.isEmpty() ? Success(Unit.Instance) : zooKeeper.flatMap(zk -> Try(() -> zk.multi(ops))).map(r -> Unit.Instance);
+			logger.debug("Committed [{}] operations for [{}] property sets with result [{}]", ops.size(), names.size(), result.isSuccess());
+			Map<String, Try<Unit>> results = new LinkedHashMap<>();
+			names.forEach(name -> results.put(name, result));
+			return results;
+		}
+	}
+}
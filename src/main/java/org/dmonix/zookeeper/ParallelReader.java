@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Try;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javascalautils.Option;
+import javascalautils.Try;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * Reads property sets directly from ZooKeeper issuing the reads of all properties in a set in parallel. <br>
+ * The <i>get</i> operation in <a href="https://github.com/pnerg/zookeeper-properties">zookeeper-properties</a> reads the properties one at a time, i.e. one
+ * network round trip per property. For sets with many properties, such as large values split into chunks, this becomes the dominating cost of a read. <br>
+ * Here all reads of the properties are issued asynchronously on the same session and then awaited, i.e. two round trips regardless of the size of the set.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class ParallelReader {
+
+	private final ZooKeeperSession session;
+
+	private final String rootPath;
+
+	private final long timeoutMillis;
+
+	/**
+	 * Creates the reader.
+	 * @param session The ZooKeeper session to read with
+	 * @param rootPath The root path of the property sets
+	 * @param timeoutMillis The max time to wait for the properties of a set to be read
+	 */
+	ParallelReader(ZooKeeperSession session, String rootPath, long timeoutMillis) {
+		this.session = session;
+		this.rootPath = rootPath;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Reads the named set, the values are returned as stored in ZooKeeper.
+	 * @param name The name of the set
+	 * @return The set, None if it doesn't exist
+	 */
+	Try<Option<PropertySet>> get(String name) {
+		return session.get().flatMap(zk -> Try(() -> read(zk, name)));
+	}
+
+	private Option<PropertySet> read(ZooKeeper zk, String name) throws KeeperException, InterruptedException, TimeoutException {
+		String setPath = rootPath + "/" + name;
+		List<String> children;
+		try {
+			children = zk.getChildren(setPath, false);
+		} catch (KeeperException.NoNodeException ex) {
+			return None();
+		}
+
+		Map<String, String> properties = new ConcurrentHashMap<>();
+		AtomicReference<KeeperException> failure = new AtomicReference<>();
+		CountDownLatch latch = new CountDownLatch(children.size());
+		children.forEach(child -> zk.getData(setPath + "/" + child, false, (rc, path, ctx, data, stat) -> {
+			if (rc == Code.OK.intValue()) {
+				properties.put(child, data != null ? new String(data, UTF_8) : "");
+			}
+			// a property deleted since listing the children is simply not part of the set
+			else if (rc != Code.NONODE.intValue()) {
+				failure.compareAndSet(null, KeeperException.create(Code.get(rc), path));
+			}
+			latch.countDown();
+		}, null));
+
+		if (!latch.await(timeoutMillis, MILLISECONDS)) {
+			throw new TimeoutException("Failed to read the properties of [" + name + "] within [" + timeoutMillis + "] ms");
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+
+		PropertySet set = PropertySet.apply(name);
+		properties.forEach((k, v) -> set.set(k, v));
+		return Some(set);
+	}
+}
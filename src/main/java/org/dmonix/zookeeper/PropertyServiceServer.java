@@ -0,0 +1,128 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.Option;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.ConnectionStatistics;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stand-alone launcher running the {@link PropertyServiceServlet} in an embedded Jetty server. <br>
+ * The server accepts both HTTP/1.1 and clear text HTTP/2 (h2c) on the same port, the latter allowing a client to multiplex all its requests over a single
+ * connection. <br>
+ * Connection statistics are exposed as JSON on <i>/metrics/connections</i> and the readiness of the service on <i>/health</i>. <br>
+ * The server is configured using system properties:
+ * <ul>
+ * <li>port - The HTTP port, default 8080</li>
+ * <li>idleTimeout - Millis an idle (keep-alive) connection is kept open, default 60000</li>
+ * <li>maxThreads - Max number of request threads, default 200</li>
+ * <li>maxConcurrentStreams - Max number of concurrent HTTP/2 streams per connection, default 128</li>
+ * <li>connectString, rootPath, writeBatchDelay, writeBatchSize, writeBatchBytes, compressionThreshold, chunkSize, cacheTtl, cacheMaxSize, preload, preloadThreads, sessionTimeout - passed as
+ * init parameters to the servlet</li>
+ * </ul>
+ * Jetty is an optional dependency to this project, it must be added to the classpath in order to use this class.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+public final class PropertyServiceServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(PropertyServiceServer.class);
+
+	/** The servlet init parameters that are picked from the system properties */
+	private static final List<String> SERVLET_PARAMETERS = Arrays.asList("connectString", "rootPath", "writeBatchDelay", "writeBatchSize", "writeBatchBytes", "compressionThreshold", "chunkSize", "cacheTtl", "cacheMaxSize", "preload", "preloadThreads", "sessionTimeout");
+
+	/**
+	 * Inhibitive constructor.
+	 */
+	private PropertyServiceServer() {
+	}
+
+	/**
+	 * Starts the server using the configuration in the system properties.
+	 * @param args Not used
+	 * @throws Exception If the server failed to start
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> initParams = new HashMap<>();
+		SERVLET_PARAMETERS.forEach(name -> Option(System.getProperty(name)).forEach(value -> initParams.put(name, value)));
+
+		Server server = create(Integer.getInteger("port", 8080), initParams);
+		server.start();
+		logger.info("Started PropertyServiceServer on [{}]", server.getURI());
+		server.join();
+	}
+
+	/**
+	 * Creates a non-started server.
+	 * @param port The HTTP port
+	 * @param initParams The init parameters for the {@link PropertyServiceServlet}
+	 * @return The server
+	 */
+	public static Server create(int port, Map<String, String> initParams) {
+		int idleTimeout = Integer.getInteger("idleTimeout", 60000);
+
+		QueuedThreadPool threadPool = new QueuedThreadPool(Integer.getInteger("maxThreads", 200), 8, idleTimeout);
+		threadPool.setName("PropertyService");
+		Server server = new Server(threadPool);
+
+		HttpConfiguration httpConfig = new HttpConfiguration();
+		httpConfig.setSendServerVersion(false);
+
+		HttpConnectionFactory http1 = new HttpConnectionFactory(httpConfig);
+		HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory(httpConfig);
+		h2c.setMaxConcurrentStreams(Integer.getInteger("maxConcurrentStreams", 128));
+
+		ServerConnector connector = new ServerConnector(server, http1, h2c);
+		connector.setPort(port);
+		connector.setIdleTimeout(idleTimeout);
+
+		// both are picked up as connection listeners by all connection factories in the connector
+		ConnectionMetrics connectionMetrics = new ConnectionMetrics();
+		ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+		connector.addBean(connectionMetrics, false);
+		connector.addBean(connectionStatistics);
+		server.addConnector(connector);
+
+		ServletHolder servletHolder = new ServletHolder(PropertyServiceServlet.class);
+		servletHolder.setInitParameters(initParams);
+		servletHolder.setInitOrder(1);
+		ServletHandler handler = new ServletHandler();
+		handler.addServletWithMapping(servletHolder, "/properties/*");
+		handler.addServletWithMapping(HealthServlet.class, "/health");
+
+		handler.addServletWithMapping(new ServletHolder(new ConnectionMetricsServlet(connectionMetrics, connectionStatistics)), "/metrics/connections");
+		connectionMetrics.setHandler(handler);
+		server.setHandler(connectionMetrics);
+
+		return server;
+	}
+}
@@ -30,7 +30,11 @@ import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
+import static javascalautils.OptionCompanion.None;
 import static javascalautils.OptionCompanion.Option;
 import static javax.servlet.http.HttpServletResponse.*;
 
@@ -52,6 +56,30 @@ public final class PropertyServiceServlet extends JSONServlet {
 	/** Factory to create access to the ZooKeeper storage */
 	private PropertiesStorageFactory propertiesStorageFactory;
 
+	/** Values larger than this (in bytes) are compressed before stored */
+	private int compressionThreshold = ValueEncodingPropertiesStorage.DISABLED;
+
+	/** Values larger than this (in UTF-8 bytes) are split across several properties */
+	private int chunkSize = ValueEncodingPropertiesStorage.DISABLED;
+
+	/** Long lived session for the operations performed directly on ZooKeeper */
+	private ZooKeeperSession zooKeeperSession;
+
+	/** Reads the properties of a set in parallel */
+	private ParallelReader parallelReader;
+
+	/** Optional batcher of write operations, only present if the 'writeBatchDelay' parameter is configured */
+	private Option<WriteBatcher> writeBatcher = None();
+
+	/** Optional cache of read property sets, only present if the 'cacheTtl' parameter is configured */
+	private Option<PropertySetCache> cache = None();
+
+	/** Tracks the readiness of this servlet */
+	private ServiceHealth health;
+
+	/** Runs the preloading of property sets, only present if the 'preload' parameter is configured */
+	private Option<ExecutorService> preloadExecutor = None();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -66,7 +94,71 @@ public final class PropertyServiceServlet extends JSONServlet {
 		logger.info("rootPath="+config.getInitParameter("rootPath"));
 		propertiesStorageFactory = PropertiesStorageFactory.apply(config.getInitParameter("connectString"));
 		Option(config.getInitParameter("rootPath")).forEach(value -> propertiesStorageFactory.withRootPath(value));
-		
+
+		Option(config.getInitParameter("compressionThreshold")).map(Integer::parseInt).forEach(value -> {
+			logger.info("compressionThreshold="+value);
+			compressionThreshold = value;
+		});
+		Option(config.getInitParameter("chunkSize")).map(Integer::parseInt).forEach(value -> {
+			logger.info("chunkSize="+value);
+			chunkSize = value;
+		});
+
+		int sessionTimeout = Option(config.getInitParameter("sessionTimeout")).map(Integer::parseInt).getOrElse(() -> 30000);
+		zooKeeperSession = new ZooKeeperSession(config.getInitParameter("connectString"), sessionTimeout);
+
+		String rootPath = Option(config.getInitParameter("rootPath")).getOrElse(() -> "/etc/properties");
+		parallelReader = new ParallelReader(zooKeeperSession, rootPath, sessionTimeout);
+
+		int writeBatchSize = Option(config.getInitParameter("writeBatchSize")).map(Integer::parseInt).getOrElse(() -> 100);
+		// stay well below the default 1MB jute.maxbuffer of ZooKeeper
+		int writeBatchBytes = Option(config.getInitParameter("writeBatchBytes")).map(Integer::parseInt).getOrElse(() -> 512 * 1024);
+		writeBatcher = Option(config.getInitParameter("writeBatchDelay")).map(Long::parseLong).filter(delay -> delay > 0).map(delay -> {
+			logger.info("writeBatchDelay="+delay);
+			logger.info("writeBatchSize="+writeBatchSize);
+			logger.info("writeBatchBytes="+writeBatchBytes);
+			MultiWriter multiWriter = new MultiWriter(zooKeeperSession, rootPath, set -> ValueEncodingPropertiesStorage.encode(set, compressionThreshold, chunkSize), writeBatchBytes);
+			return new WriteBatcher(this::getStoredProperties, this::openStorage, Option(multiWriter), delay, writeBatchSize);
+		});
+
+		int cacheMaxSize = Option(config.getInitParameter("cacheMaxSize")).map(Integer::parseInt).getOrElse(() -> 10000);
+		cache = Option(config.getInitParameter("cacheTtl")).map(Long::parseLong).map(ttl -> {
+			logger.info("cacheTtl="+ttl);
+			logger.info("cacheMaxSize="+cacheMaxSize);
+			return new PropertySetCache(ttl, cacheMaxSize);
+		});
+
+		// preloading is pointless without somewhere to keep the loaded sets
+		boolean preload = Option(config.getInitParameter("preload")).map(Boolean::parseBoolean).getOrElse(() -> false);
+		if (preload && !cache.isDefined()) {
+			logger.warn("The 'preload' parameter requires the 'cacheTtl' parameter to be configured, no property sets will be preloaded");
+			preload = false;
+		}
+
+		health = new ServiceHealth(zooKeeperSession, cache);
+		config.getServletContext().setAttribute(ServiceHealth.ATTRIBUTE_NAME, health);
+
+		if (preload) {
+			int preloadThreads = Option(config.getInitParameter("preloadThreads")).map(Integer::parseInt).getOrElse(() -> 8);
+			logger.info("preloadThreads="+preloadThreads);
+			preload(preloadThreads);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.servlet.GenericServlet#destroy()
+	 */
+	@Override
+	public void destroy() {
+		logger.info("Stopping PropertyServiceServlet");
+		// abort any ongoing preloading
+		preloadExecutor.forEach(ExecutorService::shutdownNow);
+		writeBatcher.forEach(WriteBatcher::close);
+		zooKeeperSession.close();
+		getServletContext().removeAttribute(ServiceHealth.ATTRIBUTE_NAME);
+		super.destroy();
 	}
 
 	/**
@@ -77,24 +169,30 @@ public final class PropertyServiceServlet extends JSONServlet {
 	protected Response put(Request req) {
 		return req.getPathInfo().map(name -> {
 			Try<PropertySet> propSet = propSet(name, req);
+			Try<Unit> result = storeProperties(propSet);
+			invalidate(name);
 			// orNull will never happen as we installed a recover function
-			return storeProperties(propSet)
-					.map(u -> EmptyResponse(SC_CREATED)).recover(t -> ErrorResponse(t)).orNull();
+			return result.map(u -> EmptyResponse(SC_CREATED)).recover(t -> ErrorResponse(t)).orNull();
 		}).getOrElse(() -> ErrorResponse(SC_BAD_REQUEST, "Missing property set name"));
 	}
 
 	@Override
 	protected Response post(Request req) {
 		return req.getPathInfo().map(name -> {
-			Try<PropertySet> toBeStored = propSet(name, req)
-					.flatMap(newProps -> getStoredProperties(name).map(storedProps -> {
-						PropertySet combinedProps = storedProps.getOrElse(() -> PropertySet.apply(name));
-						newProps.asMap().forEach((k,v) -> combinedProps.set(k,v));
-						return combinedProps;
-					}));
+			Try<PropertySet> newProps = propSet(name, req);
+			// the batcher merges with the stored set as part of committing the batch
+			Try<Unit> result = writeBatcher.map(batcher -> newProps.flatMap(set -> batcher.merge(set))).getOrElse(() -> {
+				Try<PropertySet> toBeStored = newProps
+						.flatMap(set -> getStoredProperties(name).map(storedProps -> {
+							PropertySet combinedProps = storedProps.getOrElse(() -> PropertySet.apply(name));
+							set.asMap().forEach((k,v) -> combinedProps.set(k,v));
+							return combinedProps;
+						}));
+				return storeProperties(toBeStored);
+			});
+			invalidate(name);
 			// orNull will never happen as we installed a recover function
-			return storeProperties(toBeStored)
-					.map(u -> EmptyResponse(SC_CREATED)).recover(this::ErrorResponse).orNull();
+			return result.map(u -> EmptyResponse(SC_CREATED)).recover(this::ErrorResponse).orNull();
 		}).getOrElse(() -> ErrorResponse(SC_BAD_REQUEST, "Missing property set name"));
 	}
 
@@ -113,7 +211,7 @@ public final class PropertyServiceServlet extends JSONServlet {
 			response = result.map(list -> ObjectResponse(list));
 		} else {
 			logger.debug("Requesting data for property [{}]", path);
-			response = getStoredProperties(path).map(this::PropertySetResponse);
+			response = cache.map(c -> c.get(path, this::getStoredProperties)).getOrElse(() -> getStoredProperties(path)).map(this::PropertySetResponse);
 		}
 		return response;
 	}
@@ -125,22 +223,72 @@ public final class PropertyServiceServlet extends JSONServlet {
 	protected Response delete(Request req) {
 		return req.getPathInfo().map(name -> {
 			logger.debug("Deleting property set [{}]", name);
-			Try<Unit> result = createStorage().flatMap(storage -> storage.delete(name));
+			Try<Unit> result = writeBatcher.map(batcher -> batcher.delete(name))
+					.getOrElse(() -> createStorage().flatMap(storage -> storage.delete(name)));
+			invalidate(name);
 			return result.map(r -> EmptyResponse(SC_OK)).recover(this::ErrorResponse).orNull();
 		}).getOrElse(() -> ErrorResponse(SC_BAD_REQUEST, "Missing property set name"));
 	}
 
+	/**
+	 * Stores the property set either via the write batcher (if configured) or directly using a new storage session.
+	 * @param propSet
+	 * @return
+	 */
 	private Try<Unit> storeProperties(Try<PropertySet> propSet) {
-		return propSet.flatMap(set -> createStorage().flatMap(storage -> storage.store(set)));
+		return propSet.flatMap(set -> writeBatcher.map(batcher -> batcher.store(set))
+				.getOrElse(() -> createStorage().flatMap(storage -> storage.store(set))));
 	}
 
 	/**
-	 * Get stored properties
+	 * Removes the named set from the cache (if configured) as it has been changed.
+	 * @param name
+	 */
+	private void invalidate(String name) {
+		cache.forEach(c -> c.invalidate(name));
+	}
+
+	/**
+	 * Reads all property sets into the cache in parallel. <br>
+	 * Runs in the background, the progress is reported to the {@link ServiceHealth}.
+	 * @param threads The number of sets to read in parallel
+	 */
+	private void preload(int threads) {
+		health.preloadStarted();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		preloadExecutor = Option(executor);
+		executor.execute(() -> {
+			Try<List<String>> names = createStorage().flatMap(storage -> storage.propertySets());
+			names.forEach(list -> {
+				logger.info("Preloading [{}] property sets", list.size());
+				health.preloadTotal(list.size());
+				try {
+					list.forEach(name -> executor.execute(() -> {
+						Option<Long> generation = cache.map(PropertySetCache::generation);
+						Try<Option<PropertySet>> result = getStoredProperties(name);
+						cache.forEach(c -> result.forEach(set -> c.put(name, set, generation.get())));
+						health.preloaded(result.isSuccess());
+					}));
+				} catch (RejectedExecutionException ex) {
+					logger.info("Preloading aborted as the servlet is stopped");
+				}
+			});
+			names.failed().forEach(t -> {
+				logger.warn("Failed to list property sets, aborting preload", t);
+				health.preloadAborted();
+			});
+			// all loads are already queued, the executor terminates once they are done
+			executor.shutdown();
+		});
+	}
+
+	/**
+	 * Get stored properties, all properties of the set are read in parallel
 	 * @param name
 	 * @return
      */
 	private Try<Option<PropertySet>> getStoredProperties(String name) {
-		return createStorage().flatMap(storage -> storage.get(name));
+		return parallelReader.get(name).map(set -> set.map(ValueEncodingPropertiesStorage::decodeSet));
 	}
 
 	/**
@@ -148,8 +296,17 @@ public final class PropertyServiceServlet extends JSONServlet {
 	 * @return
 	 */
 	private Try<PropertiesStorage> createStorage() {
-		//use the factory to create a PropertiesStorage and then wrap it in a AutoCloseablePropertiesStorage
-		return propertiesStorageFactory.create().map(storage -> new AutoCloseablePropertiesStorage(storage));
+		//open a PropertiesStorage and then wrap it in a AutoCloseablePropertiesStorage
+		return openStorage().map(storage -> new AutoCloseablePropertiesStorage(storage));
+	}
+
+	/**
+	 * Uses the {@link PropertiesStorageFactory} to create a {@link ValueEncodingPropertiesStorage}. <br>
+	 * The caller is responsible for closing the storage.
+	 * @return
+	 */
+	private Try<PropertiesStorage> openStorage() {
+		return propertiesStorageFactory.create().map(storage -> new ValueEncodingPropertiesStorage(storage, compressionThreshold, chunkSize));
 	}
 
 	/**
@@ -0,0 +1,238 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static javascalautils.TryCompanion.Success;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import javascalautils.Option;
+import javascalautils.Try;
+
+/**
+ * Time based cache of read property sets. <br>
+ * The cache stores copies of the sets, hence a set returned from the cache can be freely modified. <br>
+ * Non-existing sets are cached as well to avoid repeated lookups of missing sets. <br>
+ * Every invalidation of a set is stamped with a generation from a common sequence. A loaded set is only added to the cache if the set hasn't been
+ * invalidated since the generation was taken before the load started, i.e. a load racing with a write never caches the set as it was before the write.
+ * <br>
+ * The number of cached sets is capped, once full the expired sets are swept and if there's still no room the loaded set is simply not cached. This
+ * prevents clients from growing the cache without bounds by reading made up (non-existing) set names.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class PropertySetCache {
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/** The generation of the last invalidation per set name, guards all changes to the entries of the name */
+	private final Map<String, Long> invalidations = new ConcurrentHashMap<>();
+
+	private final AtomicLong generations = new AtomicLong();
+
+	/** The generation assumed for all names not in the invalidations, raised whenever the invalidations are trimmed */
+	private volatile long invalidationFloor;
+
+	/** Read lock for changes of single names, write lock for trimming the invalidations */
+	private final ReadWriteLock invalidationsLock = new ReentrantReadWriteLock();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final long ttlNanos;
+
+	private final int maxSize;
+
+	/**
+	 * Creates the cache.
+	 * @param ttlMillis The time in millis a set is kept in the cache
+	 * @param maxSize The max number of cached sets
+	 */
+	PropertySetCache(long ttlMillis, int maxSize) {
+		this.ttlNanos = MILLISECONDS.toNanos(ttlMillis);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Gets the named set from the cache, if not present or expired the set is read using the loader.
+	 * @param name The name of the set
+	 * @param loader Reads the set from the storage
+	 * @return The set
+	 */
+	Try<Option<PropertySet>> get(String name, Function<String, Try<Option<PropertySet>>> loader) {
+		Entry entry = entries.get(name);
+		if (entry != null) {
+			if (!entry.isExpired()) {
+				hits.incrementAndGet();
+				return Success(entry.propertySet());
+			}
+			// only removes the entry if it hasn't already been replaced
+			entries.remove(name, entry);
+		}
+		misses.incrementAndGet();
+		long generation = generation();
+		Try<Option<PropertySet>> result = loader.apply(name);
+		result.forEach(set -> put(name, set, generation));
+		return result;
+	}
+
+	/**
+	 * Returns the current generation, to be taken before loading a set and then provided when putting the set.
+	 * @return The generation
+	 */
+	long generation() {
+		return generations.get();
+	}
+
+	/**
+	 * Adds/replaces the named set in the cache unless the set has been invalidated since the generation was taken or the cache is full.
+	 * @param name The name of the set
+	 * @param propertySet The set, None if the set does not exist
+	 * @param generation The generation taken before the set was loaded
+	 * @return If the set was added
+	 */
+	boolean put(String name, Option<PropertySet> propertySet, long generation) {
+		if (entries.size() >= maxSize && !entries.containsKey(name)) {
+			sweep();
+			if (entries.size() >= maxSize) {
+				return false;
+			}
+		}
+		Option<Map<String, String>> properties = propertySet.map(set -> new HashMap<>(set.asMap()));
+		Entry entry = new Entry(name, properties, System.nanoTime() + ttlNanos);
+		boolean[] added = new boolean[1];
+		invalidationsLock.readLock().lock();
+		try {
+			invalidations.compute(name, (k, invalidated) -> {
+				if ((invalidated != null ? invalidated : invalidationFloor) <= generation) {
+					entries.put(name, entry);
+					added[0] = true;
+				}
+				return invalidated;
+			});
+		} finally {
+			invalidationsLock.readLock().unlock();
+		}
+		return added[0];
+	}
+
+	/**
+	 * Removes the named set from the cache and stamps the invalidation with a new generation.
+	 * @param name The name of the set
+	 */
+	void invalidate(String name) {
+		invalidationsLock.readLock().lock();
+		try {
+			invalidations.compute(name, (k, invalidated) -> {
+				entries.remove(name);
+				return generations.incrementAndGet();
+			});
+		} finally {
+			invalidationsLock.readLock().unlock();
+		}
+		if (invalidations.size() > maxSize) {
+			trimInvalidations();
+		}
+	}
+
+	/**
+	 * @return The number of cached (non-expired) sets
+	 */
+	int size() {
+		sweep();
+		return entries.size();
+	}
+
+	/**
+	 * Removes all expired sets.
+	 */
+	private void sweep() {
+		entries.values().removeIf(Entry::isExpired);
+	}
+
+	/**
+	 * Forgets all invalidations by raising the floor to the current generation. <br>
+	 * Any load started before now is treated as if it raced with an invalidation and is not cached.
+	 */
+	private void trimInvalidations() {
+		invalidationsLock.writeLock().lock();
+		try {
+			invalidationFloor = generations.get();
+			invalidations.clear();
+		} finally {
+			invalidationsLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of reads served from the cache
+	 */
+	long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of reads that had to go to the storage
+	 */
+	long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return The ratio of reads served from the cache, 0 if there have been no reads
+	 */
+	double hitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total > 0 ? (double) h / total : 0d;
+	}
+
+	/**
+	 * A single cached set.
+	 */
+	private static final class Entry {
+		private final String name;
+		private final Option<Map<String, String>> properties;
+		private final long expiresAt;
+
+		private Entry(String name, Option<Map<String, String>> properties, long expiresAt) {
+			this.name = name;
+			this.properties = properties;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired() {
+			return System.nanoTime() - expiresAt >= 0;
+		}
+
+		private Option<PropertySet> propertySet() {
+			return properties.map(map -> {
+				PropertySet set = PropertySet.apply(name);
+				map.forEach((k, v) -> set.set(k, v));
+				return set;
+			});
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javascalautils.Option;
+
+/**
+ * Keeps track of the health of the {@link PropertyServiceServlet}. <br>
+ * The service is considered ready once it has a connected ZooKeeper session and any configured preloading of property sets has completed. <br>
+ * Should the ZooKeeper session expire the {@link ZooKeeperSession} creates a new one, i.e. the service becomes ready again once ZooKeeper is reachable.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class ServiceHealth {
+
+	/** The name of the servlet context attribute holding the health instance */
+	static final String ATTRIBUTE_NAME = ServiceHealth.class.getName();
+
+	/** The session used for the operations performed directly on ZooKeeper */
+	private final ZooKeeperSession session;
+
+	private final Option<PropertySetCache> cache;
+
+	/** Total number of sets to preload, -1 until the sets have been listed */
+	private final AtomicInteger preloadTotal = new AtomicInteger(-1);
+
+	private final AtomicInteger preloaded = new AtomicInteger();
+
+	private final AtomicInteger preloadFailed = new AtomicInteger();
+
+	private volatile boolean preloadEnabled;
+
+	/**
+	 * Creates the health instance.
+	 * @param session The ZooKeeper session to monitor
+	 * @param cache The optional property set cache
+	 */
+	ServiceHealth(ZooKeeperSession session, Option<PropertySetCache> cache) {
+		this.session = session;
+		this.cache = cache;
+	}
+
+	/**
+	 * Marks that preloading has started.
+	 */
+	void preloadStarted() {
+		preloadEnabled = true;
+	}
+
+	/**
+	 * Sets the total number of sets to be preloaded.
+	 * @param total The number of sets
+	 */
+	void preloadTotal(int total) {
+		preloadTotal.set(total);
+	}
+
+	/**
+	 * Marks that a single set has been preloaded.
+	 * @param success If the set was successfully loaded
+	 */
+	void preloaded(boolean success) {
+		(success ? preloaded : preloadFailed).incrementAndGet();
+	}
+
+	/**
+	 * Marks that preloading aborted, no further sets will be loaded.
+	 */
+	void preloadAborted() {
+		preloadTotal.set(preloaded.get() + preloadFailed.get());
+	}
+
+	/**
+	 * @return If there is no preloading or it has been completed
+	 */
+	boolean isPreloadCompleted() {
+		int total = preloadTotal.get();
+		return !preloadEnabled || (total >= 0 && preloaded.get() + preloadFailed.get() >= total);
+	}
+
+	/**
+	 * @return The state of the ZooKeeper session
+	 */
+	String zooKeeperState() {
+		return session.state();
+	}
+
+	/**
+	 * @return If the service is ready to serve traffic
+	 */
+	boolean isReady() {
+		return isPreloadCompleted() && session.isConnected();
+	}
+
+	/**
+	 * @return The full status as a map
+	 */
+	Map<String, Object> status() {
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("ready", isReady());
+		status.put("zooKeeperState", zooKeeperState());
+
+		Map<String, Object> preload = new LinkedHashMap<>();
+		preload.put("enabled", preloadEnabled);
+		preload.put("completed", isPreloadCompleted());
+		preload.put("total", preloadTotal.get());
+		preload.put("loaded", preloaded.get());
+		preload.put("failed", preloadFailed.get());
+		status.put("preload", preload);
+
+		cache.forEach(c -> {
+			Map<String, Object> cacheStatus = new LinkedHashMap<>();
+			cacheStatus.put("size", c.size());
+			cacheStatus.put("hits", c.hits());
+			cacheStatus.put("misses", c.misses());
+			cacheStatus.put("hitRatio", c.hitRatio());
+			status.put("cache", cacheStatus);
+		});
+		return status;
+	}
+}
@@ -0,0 +1,299 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.TryCompanion.Try;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+
+/**
+ * Acts as a proxy for {@link PropertiesStorage} transparently encoding large property values. <br>
+ * Values larger than the compression threshold are gzipped and Base64 encoded. <br>
+ * Values (encoded or not) larger than the chunk size (in UTF-8 bytes) are split across several sibling properties, the original property then only contains a marker with the
+ * number of chunks. <br>
+ * Encoded values are prefixed with a marker making it possible to decode them when read, thus the REST layer always returns the original value.
+ * <br>
+ * Note that applications reading encoded values directly from ZooKeeper will see the encoded data, hence both compression and chunking are disabled by default.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class ValueEncodingPropertiesStorage implements PropertiesStorage {
+
+	/** Common prefix for all markers, the NUL character is not expected in any human provided value */
+	static final String MARKER = "\u0000zkp:";
+
+	/** Marks a gzipped and Base64 encoded value */
+	static final String COMPRESSED_MARKER = MARKER + "gz:";
+
+	/** Marks a value that has been split into chunks, followed by the number of chunks */
+	static final String CHUNKED_MARKER = MARKER + "chunks:";
+
+	/** Marks a raw value that happened to start with the {@link #MARKER} */
+	static final String RAW_MARKER = MARKER + "raw:";
+
+	/** Separates the property name and the chunk index in the name of chunk properties */
+	static final String CHUNK_SEPARATOR = "$chunk$";
+
+	/** Value for disabling compression or chunking */
+	static final int DISABLED = Integer.MAX_VALUE;
+
+	private final PropertiesStorage propertiesStorage;
+
+	private final int compressionThreshold;
+
+	private final int chunkSize;
+
+	/**
+	 * Creates the proxy.
+	 * @param propertiesStorage The storage to proxy
+	 * @param compressionThreshold The size in bytes a value must exceed to be compressed
+	 * @param chunkSize The max number of bytes (UTF-8) stored in a single property
+	 */
+	ValueEncodingPropertiesStorage(PropertiesStorage propertiesStorage, int compressionThreshold, int chunkSize) {
+		this.propertiesStorage = propertiesStorage;
+		this.compressionThreshold = compressionThreshold;
+		this.chunkSize = chunkSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		Try(() -> propertiesStorage.close());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.PropertiesStorage#get(java.lang.String)
+	 */
+	@Override
+	public Try<Option<PropertySet>> get(String name) {
+		return propertiesStorage.get(name).map(set -> set.map(ValueEncodingPropertiesStorage::decodeSet));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.PropertiesStorage#store(org.dmonix.zookeeper.PropertySet)
+	 */
+	@Override
+	public Try<Unit> store(PropertySet propertySet) {
+		return Try(() -> encode(propertySet, compressionThreshold, chunkSize)).flatMap(propertiesStorage::store);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.PropertiesStorage#delete(java.lang.String)
+	 */
+	@Override
+	public Try<Unit> delete(String name) {
+		return propertiesStorage.delete(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.PropertiesStorage#propertySets()
+	 */
+	@Override
+	public Try<List<String>> propertySets() {
+		return propertiesStorage.propertySets();
+	}
+
+	/**
+	 * Encodes all values in the set into the format they are stored in ZooKeeper.
+	 * @param propertySet The set with the original values
+	 * @param compressionThreshold The size in bytes a value must exceed to be compressed
+	 * @param chunkSize The max number of bytes (UTF-8) stored in a single property
+	 * @return The set with the encoded values
+	 * @throws IllegalArgumentException If the name of a property collides with the name of a chunk of another property
+	 */
+	static PropertySet encode(PropertySet propertySet, int compressionThreshold, int chunkSize) {
+		Map<String, String> properties = propertySet.asMap();
+		PropertySet encoded = PropertySet.apply(propertySet.name());
+		properties.forEach((k, v) -> encode(encoded, properties, k, v, compressionThreshold, chunkSize));
+		return encoded;
+	}
+
+	/**
+	 * Encodes a single value into one or more properties in the target set.
+	 * @param target The set to add the encoded properties to
+	 * @param properties All original properties of the set, needed to detect collisions with the chunk properties
+	 * @param name The name of the property
+	 * @param value The original value
+	 * @param compressionThreshold The size in bytes a value must exceed to be compressed
+	 * @param chunkSize The max number of bytes (UTF-8) stored in a single property
+	 */
+	private static void encode(PropertySet target, Map<String, String> properties, String name, String value, int compressionThreshold, int chunkSize) {
+		String encoded = value.startsWith(MARKER) ? RAW_MARKER + value : value;
+		int encodedBytes = encoded.getBytes(UTF_8).length;
+		if (value.getBytes(UTF_8).length > compressionThreshold) {
+			String compressed = COMPRESSED_MARKER + Base64.getEncoder().encodeToString(gzip(value));
+			// no point in storing compressed data if it didn't pay off, the compressed value is pure ASCII
+			if (compressed.length() < encodedBytes) {
+				encoded = compressed;
+				encodedBytes = compressed.length();
+			}
+		}
+
+		if (encodedBytes <= chunkSize) {
+			target.set(name, encoded);
+			return;
+		}
+
+		int chunks = 0;
+		for (int start = 0; start < encoded.length(); chunks++) {
+			int end = start;
+			int bytes = 0;
+			// walk whole code points, thus never splitting a surrogate pair across two chunks, a chunk always gets at least one code point
+			while (end < encoded.length()) {
+				int codePoint = encoded.codePointAt(end);
+				bytes += utf8Length(codePoint);
+				if (bytes > chunkSize && end > start) {
+					break;
+				}
+				end += Character.charCount(codePoint);
+			}
+			String chunkName = name + CHUNK_SEPARATOR + chunks;
+			if (properties.containsKey(chunkName)) {
+				throw new IllegalArgumentException("The property [" + chunkName + "] collides with a chunk of the property [" + name + "]");
+			}
+			target.set(chunkName, encoded.substring(start, end));
+			start = end;
+		}
+		target.set(name, CHUNKED_MARKER + chunks);
+	}
+
+	/**
+	 * Returns the number of bytes the code point occupies when encoded as UTF-8.
+	 * @param codePoint The code point
+	 * @return The number of bytes
+	 */
+	private static int utf8Length(int codePoint) {
+		if (codePoint < 0x80) {
+			return 1;
+		}
+		if (codePoint < 0x800) {
+			return 2;
+		}
+		return codePoint < 0x10000 ? 3 : 4;
+	}
+
+	/**
+	 * Decodes all values in the set, reassembling chunked values and hiding the chunk properties. <br>
+	 * Only the chunks belonging to a chunked property are hidden, any other property is returned as is even if its name contains the
+	 * {@link #CHUNK_SEPARATOR}.
+	 * @param stored The set as stored in ZooKeeper
+	 * @return The set with the original values
+	 */
+	static PropertySet decodeSet(PropertySet stored) {
+		Map<String, String> properties = stored.asMap();
+		Set<String> chunkNames = new HashSet<>();
+		properties.forEach((k, v) -> {
+			if (v.startsWith(CHUNKED_MARKER)) {
+				int chunks = Integer.parseInt(v.substring(CHUNKED_MARKER.length()));
+				for (int i = 0; i < chunks; i++) {
+					chunkNames.add(k + CHUNK_SEPARATOR + i);
+				}
+			}
+		});
+
+		PropertySet decoded = PropertySet.apply(stored.name());
+		properties.forEach((k, v) -> {
+			if (!chunkNames.contains(k)) {
+				decoded.set(k, decode(properties, k, v));
+			}
+		});
+		return decoded;
+	}
+
+	/**
+	 * Decodes a single value.
+	 * @param properties All stored properties of the set, needed to find the chunks
+	 * @param name The name of the property
+	 * @param value The stored value
+	 * @return The original value
+	 */
+	private static String decode(Map<String, String> properties, String name, String value) {
+		String assembled = value;
+		if (value.startsWith(CHUNKED_MARKER)) {
+			int chunks = Integer.parseInt(value.substring(CHUNKED_MARKER.length()));
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < chunks; i++) {
+				String chunk = properties.get(name + CHUNK_SEPARATOR + i);
+				if (chunk == null) {
+					throw new IllegalStateException("Missing chunk [" + i + "] of [" + chunks + "] for property [" + name + "]");
+				}
+				sb.append(chunk);
+			}
+			assembled = sb.toString();
+		}
+
+		if (assembled.startsWith(COMPRESSED_MARKER)) {
+			return gunzip(Base64.getDecoder().decode(assembled.substring(COMPRESSED_MARKER.length())));
+		}
+		if (assembled.startsWith(RAW_MARKER)) {
+			return assembled.substring(RAW_MARKER.length());
+		}
+		return assembled;
+	}
+
+	private static byte[] gzip(String value) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(baos)) {
+			out.write(value.getBytes(UTF_8));
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return baos.toByteArray();
+	}
+
+	private static String gunzip(byte[] data) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+				baos.write(buffer, 0, read);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return new String(baos.toByteArray(), UTF_8);
+	}
+}
@@ -0,0 +1,305 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Failure;
+import static javascalautils.TryCompanion.Success;
+import static javascalautils.TryCompanion.Try;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queues write operations for a short while and commits them in batches. <br>
+ * All writes to the same property set within a batch are applied in the order they arrived and folded into one final store/delete of that set. <br>
+ * If a {@link MultiWriter} is provided the sets of a batch are committed using ZooKeeper <i>multi</i> transactions, i.e. a single round trip to ZooKeeper
+ * for the entire batch. Sets that could not be committed that way (e.g. due to a concurrent change by another node or being too large for a transaction) are committed one by one using a
+ * single {@link PropertiesStorage} session. <br>
+ * Each write operation blocks the calling thread until the batch it was part of has been committed.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class WriteBatcher implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBatcher.class);
+
+	/** How long the worker waits for the first write before checking if it has been closed */
+	private static final long IDLE_POLL_MILLIS = 100;
+
+	private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+
+	/** Reads the stored set, needed when merging */
+	private final Function<String, Try<Option<PropertySet>>> reader;
+
+	/** Opens a new storage session, only used for sets not committed in a multi transaction */
+	private final Supplier<Try<PropertiesStorage>> storageSupplier;
+
+	/** Optional writer of multi transactions */
+	private final Option<MultiWriter> multiWriter;
+
+	private final long batchDelayNanos;
+
+	private final int maxBatchSize;
+
+	private final Thread worker;
+
+	private volatile boolean running = true;
+
+	/** Set once {@link #close()} is invoked, as opposed to the worker stopping by itself */
+	private volatile boolean closed;
+
+	/**
+	 * Creates and starts the batcher.
+	 * @param reader Reads the stored (decoded) set when merging
+	 * @param storageSupplier Used to open a storage session for sets that are committed one by one
+	 * @param multiWriter Optional writer for committing the batch using multi transactions
+	 * @param batchDelayMillis The time in millis to collect writes before committing a batch
+	 * @param maxBatchSize The max number of writes in a single batch
+	 */
+	WriteBatcher(Function<String, Try<Option<PropertySet>>> reader, Supplier<Try<PropertiesStorage>> storageSupplier, Option<MultiWriter> multiWriter,
+			long batchDelayMillis, int maxBatchSize) {
+		this.reader = reader;
+		this.storageSupplier = storageSupplier;
+		this.multiWriter = multiWriter;
+		this.batchDelayNanos = MILLISECONDS.toNanos(batchDelayMillis);
+		this.maxBatchSize = maxBatchSize;
+		this.worker = new Thread(this::run, "PropertyWriteBatcher");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stores the provided set, overwriting any existing set with the same name.
+	 * @param propertySet The set to store
+	 * @return The result of the batch the write was committed in
+	 */
+	Try<Unit> store(PropertySet propertySet) {
+		return submit(new PendingWrite(propertySet.name(), false, current -> Some(propertySet)));
+	}
+
+	/**
+	 * Merges the properties of the provided set into any existing set with the same name.
+	 * @param propertySet The properties to merge
+	 * @return The result of the batch the write was committed in
+	 */
+	Try<Unit> merge(PropertySet propertySet) {
+		return submit(new PendingWrite(propertySet.name(), true, current -> {
+			PropertySet combinedProps = current.getOrElse(() -> PropertySet.apply(propertySet.name()));
+			propertySet.asMap().forEach((k, v) -> combinedProps.set(k, v));
+			return Some(combinedProps);
+		}));
+	}
+
+	/**
+	 * Deletes the named set.
+	 * @param name The name of the set
+	 * @return The result of the batch the write was committed in
+	 */
+	Try<Unit> delete(String name) {
+		return submit(new PendingWrite(name, false, current -> None()));
+	}
+
+	/**
+	 * Stops accepting new writes and commits all writes already queued before returning.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		running = false;
+		Try(() -> worker.join());
+		// the worker has stopped, flush whatever that got queued while it was shutting down
+		List<PendingWrite> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		if (!remaining.isEmpty()) {
+			commit(remaining);
+		}
+	}
+
+	private Try<Unit> submit(PendingWrite write) {
+		if (!running) {
+			return Failure(new IllegalStateException("The write batcher is closed"));
+		}
+		queue.add(write);
+		// closed while we were adding, if we manage to remove the write no-one else will commit it
+		if (!running && queue.remove(write)) {
+			return Failure(new IllegalStateException("The write batcher is closed"));
+		}
+		try {
+			return write.result.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return Failure(ex);
+		} catch (ExecutionException ex) {
+			return Failure(ex.getCause());
+		}
+	}
+
+	/**
+	 * The worker loop collecting writes into batches.
+	 */
+	private void run() {
+		List<PendingWrite> batch = new ArrayList<>();
+		while (running) {
+			try {
+				PendingWrite first = queue.poll(IDLE_POLL_MILLIS, MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + batchDelayNanos;
+				while (batch.size() < maxBatchSize) {
+					PendingWrite next = queue.poll(deadline - System.nanoTime(), NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			} catch (InterruptedException ex) {
+				logger.warn("Write batcher was interrupted, stopping");
+				running = false;
+			}
+			if (!batch.isEmpty()) {
+				try {
+					commit(batch);
+				} catch (RuntimeException ex) {
+					// the writes in the batch have already been failed, keep serving the following batches
+					logger.error("Unexpected failure committing batch", ex);
+				}
+				batch.clear();
+			}
+		}
+
+		// stopped without being closed, no-one will commit the queued writes
+		if (!closed) {
+			List<PendingWrite> remaining = new ArrayList<>();
+			queue.drainTo(remaining);
+			remaining.forEach(write -> write.result.complete(Failure(new IllegalStateException("The write batcher has stopped"))));
+		}
+	}
+
+	/**
+	 * Commits all writes in the batch.
+	 * @param batch The writes to commit
+	 */
+	private void commit(List<PendingWrite> batch) {
+		// group the writes per property set keeping the order in which they arrived
+		Map<String, List<PendingWrite>> writesPerSet = new LinkedHashMap<>();
+		batch.forEach(write -> writesPerSet.computeIfAbsent(write.name, k -> new ArrayList<>()).add(write));
+		logger.debug("Committing [{}] writes to [{}] property sets", batch.size(), writesPerSet.size());
+
+		try (StorageSession session = new StorageSession()) {
+			Map<String, Try<Unit>> results = new HashMap<>();
+			Map<String, Option<PropertySet>> states = new LinkedHashMap<>();
+			writesPerSet.forEach((name, writes) -> {
+				Try<Option<PropertySet>> state = fold(name, writes);
+				if (state.isFailure()) {
+					results.put(name, state.map(u -> Unit.Instance));
+				} else {
+					states.put(name, state.orNull());
+				}
+			});
+
+			multiWriter.forEach(writer -> results.putAll(writer.commit(states)));
+
+			// sets not committed in a multi transaction are committed one by one
+			states.forEach((name, state) -> {
+				Try<Unit> result = results.get(name);
+				if (result == null || result.isFailure()) {
+					results.put(name, session.get().flatMap(storage -> state.isDefined() ? storage.store(state.get()) : storage.delete(name)));
+				}
+			});
+			writesPerSet.forEach((name, writes) -> writes.forEach(write -> write.result.complete(results.get(name))));
+		} finally {
+			// never leave a caller hanging, this is a no-op for all writes that already got a result
+			batch.forEach(write -> write.result.complete(Failure(new IllegalStateException("The batch failed to commit"))));
+		}
+	}
+
+	/**
+	 * Folds all writes for a single set into its final state.
+	 * @param name The name of the set
+	 * @param writes The writes in the order they arrived
+	 * @return The final state, None meaning the set is to be deleted
+	 */
+	private Try<Option<PropertySet>> fold(String name, List<PendingWrite> writes) {
+		// only need to read the stored set if the first write depends on it, any later write depends on the folded state
+		Try<Option<PropertySet>> state = writes.get(0).dependsOnStoredSet ? reader.apply(name) : Success(None());
+		for (PendingWrite write : writes) {
+			state = state.map(current -> write.change.apply(current));
+		}
+		return state;
+	}
+
+	/**
+	 * Lazily opened storage session for the sets of a single batch that are committed one by one.
+	 */
+	private final class StorageSession implements Closeable {
+		private Try<PropertiesStorage> storage;
+
+		private Try<PropertiesStorage> get() {
+			if (storage == null) {
+				storage = storageSupplier.get();
+			}
+			return storage;
+		}
+
+		@Override
+		public void close() {
+			if (storage != null) {
+				storage.forEach(s -> Try(() -> s.close()));
+			}
+		}
+	}
+
+	/**
+	 * A single queued write operation.
+	 */
+	private static final class PendingWrite {
+		private final String name;
+		private final boolean dependsOnStoredSet;
+		/** Transforms the current state of the set into the new state, None meaning the set is deleted */
+		private final Function<Option<PropertySet>, Option<PropertySet>> change;
+		private final CompletableFuture<Try<Unit>> result = new CompletableFuture<>();
+
+		private PendingWrite(String name, boolean dependsOnStoredSet, Function<Option<PropertySet>, Option<PropertySet>> change) {
+			this.name = name;
+			this.dependsOnStoredSet = dependsOnStoredSet;
+			this.change = change;
+		}
+	}
+}
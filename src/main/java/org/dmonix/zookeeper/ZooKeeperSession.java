@@ -0,0 +1,157 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static javascalautils.TryCompanion.Failure;
+import static javascalautils.TryCompanion.Success;
+import static javascalautils.TryCompanion.Try;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import javascalautils.Try;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.ZooKeeper.States;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long lived ZooKeeper session shared by the parts of the service that operate directly on ZooKeeper. <br>
+ * The session is automatically re-created should it expire, e.g. after a network partition longer than the session timeout.
+ *
+ * @author Peter Nerg
+ * @since 1.0
+ */
+final class ZooKeeperSession implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ZooKeeperSession.class);
+
+	private final String connectString;
+
+	private final int sessionTimeout;
+
+	/** The current handle, guarded by this */
+	private ZooKeeper zooKeeper;
+
+	private boolean closed;
+
+	/**
+	 * Creates the session, the connection is established in the background.
+	 * @param connectString The ZooKeeper connect string
+	 * @param sessionTimeout The session timeout in millis
+	 */
+	ZooKeeperSession(String connectString, int sessionTimeout) {
+		this.connectString = connectString;
+		this.sessionTimeout = sessionTimeout;
+		synchronized (this) {
+			reconnect();
+		}
+	}
+
+	/**
+	 * Returns the handle, waiting for at most the session timeout for it to become connected.
+	 * @return The connected handle
+	 */
+	synchronized Try<ZooKeeper> get() {
+		long deadline = System.nanoTime() + MILLISECONDS.toNanos(sessionTimeout);
+		while (!closed && !isConnected()) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return Failure(new TimeoutException("Failed to connect to ZooKeeper [" + connectString + "] within [" + sessionTimeout + "] ms"));
+			}
+			if (zooKeeper == null || !zooKeeper.getState().isAlive()) {
+				reconnect();
+			}
+			try {
+				wait(Math.max(1, NANOSECONDS.toMillis(remaining)));
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return Failure(ex);
+			}
+		}
+		return closed ? Failure(new IllegalStateException("The ZooKeeper session is closed")) : Success(zooKeeper);
+	}
+
+	/**
+	 * Returns the state of the current handle without blocking. <br>
+	 * Only reads the state, re-creating the handle is left to the expiry watcher and {@link #get()}.
+	 * @return The state
+	 */
+	synchronized String state() {
+		return zooKeeper != null ? zooKeeper.getState().name() : States.CLOSED.name();
+	}
+
+	/**
+	 * @return If the current handle is connected
+	 */
+	synchronized boolean isConnected() {
+		return zooKeeper != null && zooKeeper.getState().isConnected();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		closeHandle();
+		notifyAll();
+	}
+
+	/**
+	 * Replaces the current handle with a new one, must be invoked holding the lock.
+	 */
+	private void reconnect() {
+		closeHandle();
+		try {
+			// the watcher is bound to the handle it was created for so events from an old handle are ignored
+			ZooKeeper[] handle = new ZooKeeper[1];
+			handle[0] = new ZooKeeper(connectString, sessionTimeout, event -> onEvent(handle[0], event));
+			zooKeeper = handle[0];
+		} catch (IOException ex) {
+			logger.warn("Failed to create ZooKeeper session to [{}]", connectString, ex);
+		}
+	}
+
+	private void closeHandle() {
+		if (zooKeeper != null) {
+			ZooKeeper old = zooKeeper;
+			zooKeeper = null;
+			Try(() -> old.close());
+		}
+	}
+
+	private synchronized void onEvent(ZooKeeper source, WatchedEvent event) {
+		logger.debug("ZooKeeper event [{}]", event);
+		// event for a handle that has already been replaced
+		if (source != null && source != zooKeeper) {
+			return;
+		}
+		if (event.getState() == KeeperState.Expired && !closed) {
+			logger.warn("ZooKeeper session expired, creating a new session");
+			reconnect();
+		}
+		notifyAll();
+	}
+}
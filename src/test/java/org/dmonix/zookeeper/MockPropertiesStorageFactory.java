@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javascalautils.Option;
 import javascalautils.Try;
@@ -34,6 +35,8 @@ import javascalautils.Unit;
 public final class MockPropertiesStorageFactory implements PropertiesStorageFactory, PropertiesStorage {
 
 	private final Map<String, PropertySet> properties = new HashMap<>();
+
+	private final AtomicInteger createCount = new AtomicInteger();
 	
 	public static PropertiesStorageFactory apply(String connectString) {
 		return new MockPropertiesStorageFactory();
@@ -52,9 +55,17 @@ public final class MockPropertiesStorageFactory implements PropertiesStorageFact
 	 */
 	@Override
 	public Try<PropertiesStorage> create() {
+		createCount.incrementAndGet();
 		return Success(this);
 	}
 
+	/**
+	 * @return The number of times {@link #create()} has been invoked
+	 */
+	public int createCount() {
+		return createCount.get();
+	}
+
 	/* (non-Javadoc)
 	 * @see java.io.Closeable#close()
 	 */
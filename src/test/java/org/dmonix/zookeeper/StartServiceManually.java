@@ -19,10 +19,10 @@ import static org.apache.zookeeper.CreateMode.PERSISTENT;
 import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.servlet.ServletHandler;
-import org.eclipse.jetty.servlet.ServletHolder;
 
 import zookeeperjunit.CloseableZooKeeper;
 import zookeeperjunit.ZKFactory;
@@ -38,7 +38,6 @@ public class StartServiceManually {
 	private static final int HTTP_PORT = 9998;
 
 	private static ZKInstance instance = ZKFactory.apply().create();
-	private static Server server = new Server(9998);
 
 	public static void main(String[] args) throws Throwable {
 		// starts a in-memory ZooKeeper server
@@ -53,20 +52,17 @@ public class StartServiceManually {
 			zk.create("/etc/properties/example-set/port", "6969".getBytes(), OPEN_ACL_UNSAFE, PERSISTENT);
 		}
 
-		//configure and register the servlet
-		ServletHolder servletHolder = new ServletHolder(PropertyServiceServlet.class);
-		servletHolder.setInitParameter("connectString", instance.connectString().get());
-		servletHolder.setInitParameter("rootPath", "/etc/properties");
-		ServletHandler handler = new ServletHandler();
-		handler.addServletWithMapping(servletHolder, "/properties/*");
-
-		//start the HTTP server referring to the servlet
-		server.setHandler(handler);
+		//configure and start the HTTP server with the servlet
+		Map<String, String> initParams = new HashMap<>();
+		initParams.put("connectString", instance.connectString().get());
+		initParams.put("rootPath", "/etc/properties");
+		Server server = PropertyServiceServer.create(HTTP_PORT, initParams);
 		server.start();
 
 		System.out.println("Started services");
 		System.out.println(instance.connectString().get()); //the ZooKeeper connect string
 		System.out.println("http://localhost:" + HTTP_PORT + "/properties"); //The URL to direct your browser to
+		System.out.println("http://localhost:" + HTTP_PORT + "/metrics/connections"); //The connection statistics
 	}
 
 }
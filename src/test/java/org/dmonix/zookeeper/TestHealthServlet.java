@@ -0,0 +1,121 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.OptionCompanion.None;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the class {@link HealthServlet}
+ * @author Peter Nerg
+ */
+public class TestHealthServlet extends BaseAssert {
+
+	private static final int HTTP_PORT = 9996;
+
+	private static Server server;
+
+	private static ServletContextHandler context;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = new Server(HTTP_PORT);
+		context = new ServletContextHandler();
+		context.addServlet(HealthServlet.class, "/health");
+		server.setHandler(context);
+		server.start();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void get_notStarted() throws IOException {
+		context.getServletContext().removeAttribute(ServiceHealth.ATTRIBUTE_NAME);
+		HttpURLConnection connection = get();
+		assertEquals(SC_SERVICE_UNAVAILABLE, connection.getResponseCode());
+		assertEquals("{\"ready\":false}", read(connection.getErrorStream()));
+	}
+
+	@Test
+	public void get_notReady() throws IOException {
+		// a closed session never becomes connected
+		ZooKeeperSession session = new ZooKeeperSession("localhost:1", 1000);
+		session.close();
+		context.getServletContext().setAttribute(ServiceHealth.ATTRIBUTE_NAME, new ServiceHealth(session, None()));
+		try {
+			HttpURLConnection connection = get();
+			assertEquals(SC_SERVICE_UNAVAILABLE, connection.getResponseCode());
+			assertTrue(connection.getContentType().startsWith("application/json"));
+			String body = read(connection.getErrorStream());
+			assertTrue(body.startsWith("{\"ready\":false,\"zooKeeperState\":"));
+			assertTrue(body.contains("\"preload\":{"));
+		} finally {
+			context.getServletContext().removeAttribute(ServiceHealth.ATTRIBUTE_NAME);
+		}
+	}
+
+	@Test
+	public void toJson() {
+		Map<String, Object> preload = new LinkedHashMap<>();
+		preload.put("enabled", true);
+		preload.put("total", -1);
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("ready", false);
+		status.put("zooKeeperState", "CONNECTING");
+		status.put("hitRatio", 0.5d);
+		status.put("preload", preload);
+
+		assertEquals("{\"ready\":false,\"zooKeeperState\":\"CONNECTING\",\"hitRatio\":0.5,\"preload\":{\"enabled\":true,\"total\":-1}}", HealthServlet.toJson(status));
+	}
+
+	@Test
+	public void toJson_escaped() {
+		assertEquals("\"say \\\"hi\\\"\\\\\\u000a\"", HealthServlet.toJson("say \"hi\"\\\n"));
+	}
+
+	private static HttpURLConnection get() throws IOException {
+		return (HttpURLConnection) new URL("http://localhost:" + HTTP_PORT + "/health").openConnection();
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (InputStream stream = in) {
+			byte[] buffer = new byte[1024];
+			for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+				baos.write(buffer, 0, read);
+			}
+		}
+		return new String(baos.toByteArray(), UTF_8);
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Option;
+import static javascalautils.OptionCompanion.Some;
+import static org.apache.zookeeper.CreateMode.PERSISTENT;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import junitextensions.TryAssert;
+import zookeeperjunit.CloseableZooKeeper;
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+
+/**
+ * Test the class {@link MultiWriter} towards a real ZooKeeper instance. <br>
+ * The written sets are read back using <i>zookeeper-properties</i> to verify that the data is laid out the same way.
+ *
+ * @author Peter Nerg
+ */
+public class TestMultiWriter extends BaseAssert implements TryAssert {
+
+	private static ZKInstance instance = ZKFactory.apply().create();
+
+	private ZooKeeperSession session;
+
+	private PropertiesStorageFactory propertiesStorageFactory;
+
+	@BeforeClass
+	public static void startZooKeeper() throws TimeoutException, Throwable {
+		instance.start().result(Duration.ofSeconds(5));
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() throws TimeoutException, InterruptedException {
+		instance.destroy().ready(Duration.ofSeconds(5));
+	}
+
+	@Before
+	public void createZkPaths() throws TimeoutException, Throwable {
+		try (CloseableZooKeeper zk = instance.connect().get()) {
+			zk.create("/etc", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+			zk.create("/etc/properties", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+		}
+		session = new ZooKeeperSession(instance.connectString().get(), 5000);
+		propertiesStorageFactory = PropertiesStorageFactory.apply(instance.connectString().get()).withRootPath("/etc/properties");
+	}
+
+	@After
+	public void cleanZooKeeper() throws TimeoutException, Throwable {
+		session.close();
+		try (CloseableZooKeeper zk = instance.connect().get()) {
+			zk.deleteRecursively("/etc");
+		}
+	}
+
+	@Test
+	public void commit_newSet() {
+		assertCommitted(writer(1024 * 1024).commit(states("some-set", Some(propertySet("some-set", "host", "localhost")))));
+		assertEquals("localhost", storedValue("some-set", "host"));
+	}
+
+	@Test
+	public void commit_overwriteSet() {
+		MultiWriter writer = writer(1024 * 1024);
+		PropertySet set = propertySet("some-set", "host", "localhost");
+		set.set("port", "6969");
+		assertCommitted(writer.commit(states("some-set", Some(set))));
+		assertCommitted(writer.commit(states("some-set", Some(propertySet("some-set", "host", "127.0.0.1")))));
+
+		assertEquals("127.0.0.1", storedValue("some-set", "host"));
+		assertNull(storedValue("some-set", "port"));
+	}
+
+	@Test
+	public void commit_deleteSet() {
+		MultiWriter writer = writer(1024 * 1024);
+		assertCommitted(writer.commit(states("some-set", Some(propertySet("some-set", "host", "localhost")))));
+		assertCommitted(writer.commit(states("some-set", None())));
+		assertFalse(storedSet("some-set").isDefined());
+	}
+
+	@Test
+	public void commit_deleteNonExistingSet() {
+		assertCommitted(writer(1024 * 1024).commit(states("no-such-set", None())));
+	}
+
+	@Test
+	public void commit_splitIntoSeveralTransactions() {
+		Map<String, Option<PropertySet>> states = new LinkedHashMap<>();
+		for (int i = 0; i < 20; i++) {
+			states.put("set-" + i, Some(propertySet("set-" + i, "key", "value-" + i)));
+		}
+		// small enough to only fit a couple of sets per transaction
+		Map<String, Try<Unit>> results = writer(400).commit(states);
+		assertEquals(20, results.size());
+		assertCommitted(results);
+		for (int i = 0; i < 20; i++) {
+			assertEquals("value-" + i, storedValue("set-" + i, "key"));
+		}
+	}
+
+	@Test
+	public void commit_setLargerThanTransaction() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append('x');
+		}
+		Map<String, Option<PropertySet>> states = new LinkedHashMap<>();
+		states.put("large-set", Some(propertySet("large-set", "large", sb.toString())));
+		states.put("small-set", Some(propertySet("small-set", "key", "value")));
+
+		Map<String, Try<Unit>> results = writer(400).commit(states);
+		// the large set is left to the caller, the small one is committed as usual
+		assertFalse(results.containsKey("large-set"));
+		assertFalse(storedSet("large-set").isDefined());
+		assertCommitted(results);
+		assertEquals("value", storedValue("small-set", "key"));
+	}
+
+	@Test
+	public void writeBatcher_fallbackOnSetLargerThanTransaction() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append('x');
+		}
+		MockPropertiesStorageFactory mockPropertiesStorage = new MockPropertiesStorageFactory();
+		WriteBatcher writeBatcher = new WriteBatcher(mockPropertiesStorage::get, mockPropertiesStorage::create, Option(writer(400)), 5, 100);
+		try {
+			assertSuccess(writeBatcher.store(propertySet("large-set", "large", sb.toString())));
+		} finally {
+			writeBatcher.close();
+		}
+		// never sent as a transaction, stored one by one using the storage
+		assertFalse(storedSet("large-set").isDefined());
+		assertEquals(sb.toString(), mockPropertiesStorage.get("large-set").orNull().get().asMap().get("large"));
+	}
+
+	@Test
+	public void commit_encodesValues() {
+		Function<PropertySet, PropertySet> encoder = set -> ValueEncodingPropertiesStorage.encode(set, 0, ValueEncodingPropertiesStorage.DISABLED);
+		MultiWriter writer = new MultiWriter(session, "/etc/properties", encoder, 1024 * 1024);
+		assertCommitted(writer.commit(states("some-set", Some(propertySet("some-set", "host", "localhost")))));
+		assertTrue(storedValue("some-set", "host").startsWith(ValueEncodingPropertiesStorage.COMPRESSED_MARKER));
+	}
+
+	@Test
+	public void writeBatcher_fallbackOnFailedTransaction() throws TimeoutException, Throwable {
+		// the root path doesn't exist making the transaction fail
+		MultiWriter writer = new MultiWriter(session, "/etc/no-such-root", Function.identity(), 1024 * 1024);
+		MockPropertiesStorageFactory mockPropertiesStorage = new MockPropertiesStorageFactory();
+		WriteBatcher writeBatcher = new WriteBatcher(mockPropertiesStorage::get, mockPropertiesStorage::create, Option(writer), 5, 100);
+		try {
+			assertSuccess(writeBatcher.store(propertySet("some-set", "host", "localhost")));
+		} finally {
+			writeBatcher.close();
+		}
+		// the set was stored using the storage instead
+		assertTrue(mockPropertiesStorage.get("some-set").orNull().isDefined());
+	}
+
+	private MultiWriter writer(int maxTransactionBytes) {
+		return new MultiWriter(session, "/etc/properties", Function.identity(), maxTransactionBytes);
+	}
+
+	private String storedValue(String name, String key) {
+		return storedSet(name).get().asMap().get(key);
+	}
+
+	private Option<PropertySet> storedSet(String name) {
+		return propertiesStorageFactory.create().flatMap(storage -> new AutoCloseablePropertiesStorage(storage).get(name)).orNull();
+	}
+
+	private static void assertCommitted(Map<String, Try<Unit>> results) {
+		results.values().forEach(result -> assertTrue(result.isSuccess()));
+	}
+
+	private static Map<String, Option<PropertySet>> states(String name, Option<PropertySet> state) {
+		Map<String, Option<PropertySet>> states = new LinkedHashMap<>();
+		states.put(name, state);
+		return states;
+	}
+
+	private static PropertySet propertySet(String name, String key, String value) {
+		PropertySet set = PropertySet.apply(name);
+		set.set(key, value);
+		return set;
+	}
+}
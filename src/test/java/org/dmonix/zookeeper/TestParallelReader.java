@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static org.apache.zookeeper.CreateMode.PERSISTENT;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import javascalautils.Try;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import junitextensions.TryAssert;
+import zookeeperjunit.CloseableZooKeeper;
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+
+/**
+ * Test the class {@link ParallelReader} towards a real ZooKeeper instance. <br>
+ * The sets are stored using <i>zookeeper-properties</i> to verify that the data is read the same way.
+ *
+ * @author Peter Nerg
+ */
+public class TestParallelReader extends BaseAssert implements TryAssert {
+
+	private static ZKInstance instance = ZKFactory.apply().create();
+
+	private ZooKeeperSession session;
+
+	private ParallelReader reader;
+
+	private PropertiesStorageFactory propertiesStorageFactory;
+
+	@BeforeClass
+	public static void startZooKeeper() throws TimeoutException, Throwable {
+		instance.start().result(Duration.ofSeconds(5));
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() throws TimeoutException, InterruptedException {
+		instance.destroy().ready(Duration.ofSeconds(5));
+	}
+
+	@Before
+	public void createZkPaths() throws TimeoutException, Throwable {
+		try (CloseableZooKeeper zk = instance.connect().get()) {
+			zk.create("/etc", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+			zk.create("/etc/properties", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+		}
+		session = new ZooKeeperSession(instance.connectString().get(), 5000);
+		reader = new ParallelReader(session, "/etc/properties", 5000);
+		propertiesStorageFactory = PropertiesStorageFactory.apply(instance.connectString().get()).withRootPath("/etc/properties");
+	}
+
+	@After
+	public void cleanZooKeeper() throws TimeoutException, Throwable {
+		session.close();
+		try (CloseableZooKeeper zk = instance.connect().get()) {
+			zk.deleteRecursively("/etc");
+		}
+	}
+
+	@Test
+	public void get_nonExistingSet() {
+		assertFalse(reader.get("no-such-set").orNull().isDefined());
+	}
+
+	@Test
+	public void get_emptySet() {
+		assertSuccess(store(PropertySet.apply("empty-set")));
+		assertTrue(reader.get("empty-set").orNull().get().asMap().isEmpty());
+	}
+
+	@Test
+	public void get_manyProperties() {
+		PropertySet set = PropertySet.apply("some-set");
+		for (int i = 0; i < 100; i++) {
+			set.set("key-" + i, "value-" + i);
+		}
+		assertSuccess(store(set));
+
+		Map<String, String> read = reader.get("some-set").orNull().get().asMap();
+		assertEquals(100, read.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("value-" + i, read.get("key-" + i));
+		}
+	}
+
+	@Test
+	public void get_chunkedValue() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("line-").append(i).append('\n');
+		}
+		PropertySet set = PropertySet.apply("some-set");
+		set.set("large", sb.toString());
+		assertSuccess(store(ValueEncodingPropertiesStorage.encode(set, ValueEncodingPropertiesStorage.DISABLED, 100)));
+
+		PropertySet read = reader.get("some-set").orNull().get();
+		assertTrue(read.asMap().size() > 1);
+		assertEquals(sb.toString(), ValueEncodingPropertiesStorage.decodeSet(read).asMap().get("large"));
+	}
+
+	@Test
+	public void get_afterClose() {
+		session.close();
+		assertFailure(reader.get("some-set"));
+	}
+
+	private Try<?> store(PropertySet set) {
+		return propertiesStorageFactory.create().flatMap(storage -> new AutoCloseablePropertiesStorage(storage).store(set));
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.servlet.http.HttpServletResponse.SC_CREATED;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static org.apache.zookeeper.CreateMode.PERSISTENT;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import zookeeperjunit.CloseableZooKeeper;
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+
+/**
+ * Starts a ZooKeper instance and a {@link PropertyServiceServer}. <br>
+ * Then runs HTTP operations towards the server to test that the properties, metrics and health are exposed.
+ *
+ * @author Peter Nerg
+ */
+public class TestPropertyServiceServer extends BaseAssert {
+
+	private static final int HTTP_PORT = 9997;
+	private static final String HTTP_URL = "http://localhost:" + HTTP_PORT;
+
+	private static ZKInstance instance = ZKFactory.apply().create();
+	private static Server server;
+
+	private final Client client = ClientBuilder.newClient();
+
+	@BeforeClass
+	public static void startServer() throws TimeoutException, Throwable {
+		instance.start().result(Duration.ofSeconds(5));
+		try (CloseableZooKeeper zk = instance.connect().get()) {
+			zk.create("/etc", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+			zk.create("/etc/properties", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+		}
+
+		Map<String, String> initParams = new HashMap<>();
+		initParams.put("connectString", instance.connectString().get());
+		initParams.put("rootPath", "/etc/properties");
+		initParams.put("cacheTtl", "60000");
+		initParams.put("preload", "true");
+		server = PropertyServiceServer.create(HTTP_PORT, initParams);
+		server.start();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		server.stop();
+		instance.destroy().ready(Duration.ofSeconds(5));
+	}
+
+	@Test
+	public void setAndGetPropertySet() {
+		Response response = client.target(HTTP_URL).path("/properties/server-set").request().put(Entity.json("{port:\"6969\"}"));
+		assertEquals(SC_CREATED, response.getStatus());
+
+		response = client.target(HTTP_URL).path("/properties/server-set").request(APPLICATION_JSON_TYPE).get();
+		assertEquals(SC_OK, response.getStatus());
+		assertTrue(response.readEntity(String.class).contains("6969"));
+	}
+
+	@Test
+	public void connectionMetrics() {
+		client.target(HTTP_URL).path("/properties").request(APPLICATION_JSON_TYPE).get().close();
+
+		Response response = client.target(HTTP_URL).path("/metrics/connections").request(APPLICATION_JSON_TYPE).get();
+		assertEquals(SC_OK, response.getStatus());
+		String metrics = response.readEntity(String.class);
+		assertTrue(metrics.contains("\"connections\""));
+		assertTrue(metrics.contains("\"requestsPerConnection\""));
+	}
+
+	@Test
+	public void connectionMetrics_monitoringNotCounted() {
+		ConnectionMetrics metrics = server.getChildHandlerByClass(ConnectionMetrics.class);
+		long requests = metrics.requests();
+		client.target(HTTP_URL).path("/health").request(APPLICATION_JSON_TYPE).get().close();
+		client.target(HTTP_URL).path("/metrics/connections").request(APPLICATION_JSON_TYPE).get().close();
+		assertEquals(requests, metrics.requests());
+	}
+
+	@Test
+	public void h2c_requestsOnSingleConnection() throws Exception {
+		ConnectionMetrics metrics = server.getChildHandlerByClass(ConnectionMetrics.class);
+		long connections = metrics.connections();
+		long requests = metrics.requests();
+
+		HTTP2Client h2Client = new HTTP2Client();
+		h2Client.start();
+		try {
+			// prior knowledge, i.e. HTTP/2 from the first byte without any upgrade
+			FuturePromise<Session> sessionPromise = new FuturePromise<>();
+			h2Client.connect(new InetSocketAddress("localhost", HTTP_PORT), new Session.Listener.Adapter(), sessionPromise);
+			Session session = sessionPromise.get(5, SECONDS);
+			for (int i = 0; i < 5; i++) {
+				assertEquals(SC_OK, h2cGet(session, "/properties"));
+			}
+		} finally {
+			h2Client.stop();
+		}
+
+		assertEquals(1, metrics.connections() - connections);
+		assertEquals(5, metrics.requests() - requests);
+	}
+
+	@Test
+	public void health() throws InterruptedException {
+		// the ZooKeeper session and preloading are completed asynchronously
+		int status = 0;
+		for (int i = 0; i < 50 && status != SC_OK; i++) {
+			Thread.sleep(100);
+			status = client.target(HTTP_URL).path("/health").request(APPLICATION_JSON_TYPE).get().getStatus();
+		}
+		assertEquals(SC_OK, status);
+
+		String health = client.target(HTTP_URL).path("/health").request(APPLICATION_JSON_TYPE).get().readEntity(String.class);
+		assertTrue(health.startsWith("{\"ready\":true,"));
+		assertTrue(health.contains("\"hitRatio\""));
+	}
+
+	/**
+	 * Performs a GET on a new stream on the provided HTTP/2 session.
+	 * @return The HTTP status
+	 */
+	private static int h2cGet(Session session, String path) throws InterruptedException {
+		MetaData.Request request = new MetaData.Request("GET", new HttpURI(HTTP_URL + path), HttpVersion.HTTP_2, new HttpFields());
+		AtomicInteger status = new AtomicInteger();
+		CountDownLatch completed = new CountDownLatch(1);
+		session.newStream(new HeadersFrame(request, null, true), new Promise.Adapter<Stream>(), new Stream.Listener.Adapter() {
+			@Override
+			public void onHeaders(Stream stream, HeadersFrame frame) {
+				if (frame.getMetaData() instanceof MetaData.Response) {
+					status.set(((MetaData.Response) frame.getMetaData()).getStatus());
+				}
+				if (frame.isEndStream()) {
+					completed.countDown();
+				}
+			}
+
+			@Override
+			public void onData(Stream stream, DataFrame frame, Callback callback) {
+				callback.succeeded();
+				if (frame.isEndStream()) {
+					completed.countDown();
+				}
+			}
+		});
+		assertTrue(completed.await(5, SECONDS));
+		return status.get();
+	}
+}
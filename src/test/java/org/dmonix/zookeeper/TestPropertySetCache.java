@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Failure;
+import static javascalautils.TryCompanion.Success;
+import static javascalautils.TryCompanion.Try;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import junitextensions.TryAssert;
+
+/**
+ * Test the class {@link PropertySetCache}
+ * @author Peter Nerg
+ */
+public class TestPropertySetCache extends BaseAssert implements TryAssert {
+
+	private final MockPropertiesStorageFactory mockPropertiesStorage = new MockPropertiesStorageFactory();
+
+	private final PropertySetCache cache = new PropertySetCache(60000, 100);
+
+	public TestPropertySetCache() {
+		PropertySet set = PropertySet.apply("some-set");
+		set.set("host", "localhost");
+		mockPropertiesStorage.store(set);
+	}
+
+	@Test
+	public void get_miss() {
+		assertTrue(load("some-set").orNull().isDefined());
+		assertEquals(0, cache.hits());
+		assertEquals(1, cache.misses());
+		assertEquals(0d, cache.hitRatio(), 0.001);
+	}
+
+	@Test
+	public void get_hit() {
+		load("some-set");
+		assertEquals("localhost", load("some-set").orNull().get().asMap().get("host"));
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+		assertEquals(0.5d, cache.hitRatio(), 0.001);
+	}
+
+	@Test
+	public void get_nonExistingSet() {
+		load("no-such-set");
+		assertFalse(load("no-such-set").orNull().isDefined());
+		assertEquals(1, cache.hits());
+	}
+
+	@Test
+	public void get_expired() {
+		PropertySetCache expiringCache = new PropertySetCache(0, 100);
+		expiringCache.get("some-set", mockPropertiesStorage::get);
+		expiringCache.get("some-set", mockPropertiesStorage::get);
+		assertEquals(0, expiringCache.hits());
+		assertEquals(2, expiringCache.misses());
+	}
+
+	@Test
+	public void get_expiredRemoved() {
+		PropertySetCache expiringCache = new PropertySetCache(0, 100);
+		expiringCache.get("some-set", mockPropertiesStorage::get);
+		// the expired entry is removed even if the set can't be read again
+		assertFailure(expiringCache.get("some-set", name -> Failure(new Exception("Failed to read"))));
+		assertEquals(0, expiringCache.size());
+	}
+
+	@Test
+	public void get_nonExistingSetsCapped() {
+		PropertySetCache smallCache = new PropertySetCache(60000, 2);
+		for (int i = 0; i < 10; i++) {
+			smallCache.get("no-such-set-" + i, mockPropertiesStorage::get);
+		}
+		assertEquals(2, smallCache.size());
+		// the sets beyond the cap were never cached
+		smallCache.get("no-such-set-9", mockPropertiesStorage::get);
+		assertEquals(11, smallCache.misses());
+	}
+
+	@Test
+	public void put_sweepsExpiredWhenFull() throws InterruptedException {
+		PropertySetCache smallCache = new PropertySetCache(50, 2);
+		smallCache.get("no-such-set-1", mockPropertiesStorage::get);
+		smallCache.get("no-such-set-2", mockPropertiesStorage::get);
+		Thread.sleep(100);
+		assertTrue(smallCache.put("some-set", None(), smallCache.generation()));
+		assertEquals(1, smallCache.size());
+	}
+
+	@Test
+	public void invalidate_manyNames() {
+		PropertySetCache smallCache = new PropertySetCache(60000, 2);
+		long generation = smallCache.generation();
+		for (int i = 0; i < 10; i++) {
+			smallCache.invalidate("some-set-" + i);
+		}
+		// the invalidations are trimmed, loads started before that are conservatively not cached
+		assertFalse(smallCache.put("some-set-0", None(), generation));
+		assertFalse(smallCache.put("other-set", None(), generation));
+		assertTrue(smallCache.put("other-set", None(), smallCache.generation()));
+	}
+
+	@Test
+	public void get_returnsCopy() {
+		load("some-set");
+		load("some-set").orNull().get().set("host", "127.0.0.1");
+		assertEquals("localhost", load("some-set").orNull().get().asMap().get("host"));
+	}
+
+	@Test
+	public void put() {
+		PropertySet set = PropertySet.apply("other-set");
+		set.set("port", "6969");
+		assertTrue(cache.put("other-set", Some(set), cache.generation()));
+		assertEquals(1, cache.size());
+		assertEquals("6969", cache.get("other-set", name -> Success(None())).orNull().get().asMap().get("port"));
+		assertEquals(1, cache.hits());
+	}
+
+	@Test
+	public void invalidate() {
+		load("some-set");
+		cache.invalidate("some-set");
+		assertEquals(0, cache.size());
+		load("some-set");
+		assertEquals(2, cache.misses());
+	}
+
+	@Test
+	public void put_afterInvalidate() {
+		long generation = cache.generation();
+		cache.invalidate("some-set");
+		assertFalse(cache.put("some-set", None(), generation));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void get_writeDuringSlowLoad() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch written = new CountDownLatch(1);
+		// the loader reads the set as it was before the write and then stalls until the write is done
+		Function<String, Try<Option<PropertySet>>> slowLoader = name -> {
+			Try<Option<PropertySet>> result = mockPropertiesStorage.get(name);
+			loading.countDown();
+			Try(() -> written.await(5, SECONDS));
+			return result;
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Try<Option<PropertySet>>> slowRead = executor.submit(() -> cache.get("some-set", slowLoader));
+			assertTrue(loading.await(5, SECONDS));
+
+			PropertySet set = PropertySet.apply("some-set");
+			set.set("host", "127.0.0.1");
+			mockPropertiesStorage.store(set);
+			cache.invalidate("some-set");
+			written.countDown();
+
+			assertEquals("localhost", slowRead.get().orNull().get().asMap().get("host"));
+		} finally {
+			executor.shutdown();
+		}
+
+		// the stale set from the slow read must not have been cached
+		assertEquals(0, cache.size());
+		assertEquals("127.0.0.1", load("some-set").orNull().get().asMap().get("host"));
+	}
+
+	private Try<Option<PropertySet>> load(String name) {
+		Try<Option<PropertySet>> result = cache.get(name, mockPropertiesStorage::get);
+		assertSuccess(result);
+		return result;
+	}
+}
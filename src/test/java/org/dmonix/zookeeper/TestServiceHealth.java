@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javascalautils.OptionCompanion.None;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+
+/**
+ * Test the class {@link ServiceHealth} towards a real ZooKeeper instance.
+ *
+ * @author Peter Nerg
+ */
+public class TestServiceHealth extends BaseAssert {
+
+	private static ZKInstance instance = ZKFactory.apply().create();
+
+	private ZooKeeperSession session;
+
+	private ServiceHealth health;
+
+	@BeforeClass
+	public static void startZooKeeper() throws TimeoutException, Throwable {
+		instance.start().result(Duration.ofSeconds(5));
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() throws TimeoutException, InterruptedException {
+		instance.destroy().ready(Duration.ofSeconds(5));
+	}
+
+	@Before
+	public void createHealth() throws Throwable {
+		session = new ZooKeeperSession(instance.connectString().get(), 2000);
+		health = new ServiceHealth(session, None());
+	}
+
+	@After
+	public void closeSession() {
+		session.close();
+	}
+
+	@Test
+	public void isReady() throws InterruptedException {
+		assertTrue(awaitReady());
+		assertEquals("CONNECTED", health.zooKeeperState());
+	}
+
+	@Test
+	public void isReady_preloading() throws InterruptedException {
+		health.preloadStarted();
+		assertFalse(health.isReady());
+		health.preloadTotal(2);
+		health.preloaded(true);
+		assertFalse(health.isReady());
+		health.preloaded(false);
+		assertTrue(awaitReady());
+	}
+
+	@Test
+	public void isReady_afterSessionExpired() throws Throwable {
+		assertTrue(awaitReady());
+		long sessionId = session.get().orNull().getSessionId();
+
+		expire(session.get().orNull());
+
+		// the session is re-created and the service becomes ready again
+		for (int i = 0; i < 100 && !(health.isReady() && session.get().orNull().getSessionId() != sessionId); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue(health.isReady());
+		assertNotEquals(sessionId, session.get().orNull().getSessionId());
+	}
+
+	@Test
+	public void zooKeeperState_readOnly() throws Throwable {
+		assertTrue(awaitReady());
+		ZooKeeper zk = session.get().orNull();
+		zk.close();
+
+		// polling the health must not replace the handle, else the state would move on to connecting/connected
+		assertEquals("CLOSED", health.zooKeeperState());
+		Thread.sleep(500);
+		assertEquals("CLOSED", health.zooKeeperState());
+		assertFalse(health.isReady());
+
+		// but the next operation does
+		assertNotSame(zk, session.get().orNull());
+		assertTrue(awaitReady());
+	}
+
+	@Test
+	public void isReady_afterClose() throws InterruptedException {
+		assertTrue(awaitReady());
+		session.close();
+		assertFalse(health.isReady());
+	}
+
+	/**
+	 * Expires the session of the provided handle by connecting with the same session id and then closing that handle.
+	 */
+	private static void expire(ZooKeeper zk) throws Throwable {
+		CountDownLatch connected = new CountDownLatch(1);
+		ZooKeeper other = new ZooKeeper(instance.connectString().get(), 2000, event -> {
+			if (event.getState() == KeeperState.SyncConnected) {
+				connected.countDown();
+			}
+		}, zk.getSessionId(), zk.getSessionPasswd());
+		assertTrue(connected.await(5, SECONDS));
+		other.close();
+	}
+
+	private boolean awaitReady() throws InterruptedException {
+		for (int i = 0; i < 100 && !health.isReady(); i++) {
+			Thread.sleep(100);
+		}
+		return health.isReady();
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.dmonix.zookeeper.ValueEncodingPropertiesStorage.CHUNKED_MARKER;
+import static org.dmonix.zookeeper.ValueEncodingPropertiesStorage.CHUNK_SEPARATOR;
+import static org.dmonix.zookeeper.ValueEncodingPropertiesStorage.COMPRESSED_MARKER;
+import static org.dmonix.zookeeper.ValueEncodingPropertiesStorage.DISABLED;
+import static org.dmonix.zookeeper.ValueEncodingPropertiesStorage.MARKER;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import junitextensions.TryAssert;
+
+/**
+ * Test the class {@link ValueEncodingPropertiesStorage}
+ * @author Peter Nerg
+ */
+public class TestValueEncodingPropertiesStorage extends BaseAssert implements TryAssert {
+
+	private static final String LARGE_VALUE = largeValue();
+
+	private final MockPropertiesStorageFactory mockPropertiesStorage = new MockPropertiesStorageFactory();
+
+	@Test
+	public void store_smallValue() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, 100, 100);
+		assertSuccess(storage.store(propertySet("host", "localhost")));
+		assertEquals("localhost", storedProperties().get("host"));
+		assertEquals("localhost", readValue(storage, "host"));
+	}
+
+	@Test
+	public void store_disabled() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, DISABLED);
+		assertSuccess(storage.store(propertySet("large", LARGE_VALUE)));
+		assertEquals(LARGE_VALUE, storedProperties().get("large"));
+	}
+
+	@Test
+	public void store_compressed() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, 100, DISABLED);
+		assertSuccess(storage.store(propertySet("large", LARGE_VALUE)));
+		String stored = storedProperties().get("large");
+		assertTrue(stored.startsWith(COMPRESSED_MARKER));
+		assertTrue(stored.length() < LARGE_VALUE.length());
+		assertEquals(LARGE_VALUE, readValue(storage, "large"));
+	}
+
+	@Test
+	public void store_chunked() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, 1000);
+		assertSuccess(storage.store(propertySet("large", LARGE_VALUE)));
+		Map<String, String> stored = storedProperties();
+		assertTrue(stored.get("large").startsWith(CHUNKED_MARKER));
+		assertTrue(stored.size() > 1);
+		assertEquals(LARGE_VALUE, readValue(storage, "large"));
+		assertEquals(1, storage.get("some-set").orNull().get().asMap().size());
+	}
+
+	@Test
+	public void store_compressedAndChunked() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, 100, 10);
+		assertSuccess(storage.store(propertySet("large", LARGE_VALUE)));
+		assertTrue(storedProperties().get("large").startsWith(CHUNKED_MARKER));
+		assertEquals(LARGE_VALUE, readValue(storage, "large"));
+	}
+
+	@Test
+	public void store_chunkedNonAscii() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			// 2, 3, 4 (surrogate pair) and 1 bytes in UTF-8
+			sb.append("\u00e5\u20ac\ud83d\ude00x");
+		}
+		String value = sb.toString();
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, 9);
+		assertSuccess(storage.store(propertySet("large", value)));
+
+		Map<String, String> stored = storedProperties();
+		assertTrue(stored.get("large").startsWith(CHUNKED_MARKER));
+		stored.forEach((k, v) -> {
+			if (!k.equals("large")) {
+				assertTrue(v.getBytes(UTF_8).length <= 9);
+				assertFalse(Character.isHighSurrogate(v.charAt(v.length() - 1)));
+			}
+		});
+		assertEquals(value, readValue(storage, "large"));
+	}
+
+	@Test
+	public void store_chunkedFewerCharactersThanBytes() {
+		// 4 characters but 12 bytes
+		String value = "\u20ac\u20ac\u20ac\u20ac";
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, 10);
+		assertSuccess(storage.store(propertySet("price", value)));
+		assertEquals(CHUNKED_MARKER + "2", storedProperties().get("price"));
+		assertEquals(value, readValue(storage, "price"));
+	}
+
+	@Test
+	public void store_valueStartingWithMarker() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, DISABLED);
+		String value = COMPRESSED_MARKER + "not-really-compressed";
+		assertSuccess(storage.store(propertySet("tricky", value)));
+		assertTrue(storedProperties().get("tricky").startsWith(MARKER));
+		assertEquals(value, readValue(storage, "tricky"));
+	}
+
+	@Test
+	public void store_nameContainingChunkSeparator() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, 1000);
+		PropertySet set = propertySet("large", LARGE_VALUE);
+		set.set("price" + CHUNK_SEPARATOR + "0", "not-a-chunk");
+		set.set("large" + CHUNK_SEPARATOR + "x", "not-a-chunk-either");
+		assertSuccess(storage.store(set));
+
+		Map<String, String> read = storage.get("some-set").orNull().get().asMap();
+		assertEquals(3, read.size());
+		assertEquals(LARGE_VALUE, read.get("large"));
+		assertEquals("not-a-chunk", read.get("price" + CHUNK_SEPARATOR + "0"));
+		assertEquals("not-a-chunk-either", read.get("large" + CHUNK_SEPARATOR + "x"));
+	}
+
+	@Test
+	public void store_nameCollidingWithChunk() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, 1000);
+		PropertySet set = propertySet("large", LARGE_VALUE);
+		set.set("large" + CHUNK_SEPARATOR + "1", "collides");
+		assertFailure(storage.store(set));
+		assertFalse(mockPropertiesStorage.get("some-set").orNull().isDefined());
+	}
+
+	@Test
+	public void get_missingChunk() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, DISABLED);
+		assertSuccess(mockPropertiesStorage.store(propertySet("large", CHUNKED_MARKER + "2")));
+		assertFailure(storage.get("some-set"));
+	}
+
+	@Test
+	public void get_nonExistingSet() {
+		PropertiesStorage storage = new ValueEncodingPropertiesStorage(mockPropertiesStorage, DISABLED, DISABLED);
+		assertFalse(storage.get("no-such-set").orNull().isDefined());
+	}
+
+	private Map<String, String> storedProperties() {
+		return mockPropertiesStorage.get("some-set").orNull().get().asMap();
+	}
+
+	private static String readValue(PropertiesStorage storage, String name) {
+		return storage.get("some-set").orNull().get().asMap().get(name);
+	}
+
+	private static PropertySet propertySet(String key, String value) {
+		PropertySet set = PropertySet.apply("some-set");
+		set.set(key, value);
+		return set;
+	}
+
+	private static String largeValue() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("line-").append(i).append('\n');
+		}
+		return sb.toString();
+	}
+}
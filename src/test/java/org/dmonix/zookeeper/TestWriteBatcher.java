@@ -0,0 +1,154 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Success;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+import junitextensions.TryAssert;
+
+/**
+ * Test the class {@link WriteBatcher}
+ * @author Peter Nerg
+ */
+public class TestWriteBatcher extends BaseAssert implements TryAssert {
+
+	private final MockPropertiesStorageFactory mockPropertiesStorage = new MockPropertiesStorageFactory();
+
+	private final WriteBatcher writeBatcher = new WriteBatcher(mockPropertiesStorage::get, mockPropertiesStorage::create, None(), 5, 100);
+
+	@After
+	public void closeBatcher() {
+		writeBatcher.close();
+	}
+
+	@Test
+	public void store() {
+		assertSuccess(writeBatcher.store(propertySet("some-set", "host", "localhost")));
+		assertEquals("localhost", storedValue("some-set", "host"));
+	}
+
+	@Test
+	public void merge_nonExistingSet() {
+		assertSuccess(writeBatcher.merge(propertySet("some-set", "host", "localhost")));
+		assertEquals("localhost", storedValue("some-set", "host"));
+	}
+
+	@Test
+	public void merge_existingSet() {
+		assertSuccess(writeBatcher.store(propertySet("some-set", "host", "localhost")));
+		assertSuccess(writeBatcher.merge(propertySet("some-set", "port", "6969")));
+		assertEquals("localhost", storedValue("some-set", "host"));
+		assertEquals("6969", storedValue("some-set", "port"));
+	}
+
+	@Test
+	public void merge_readsUsingReader() {
+		PropertySet stored = propertySet("some-set", "host", "localhost");
+		WriteBatcher readingBatcher = new WriteBatcher(name -> Success(Some(stored)), mockPropertiesStorage::create, None(), 5, 100);
+		try {
+			assertSuccess(readingBatcher.merge(propertySet("some-set", "port", "6969")));
+		} finally {
+			readingBatcher.close();
+		}
+		// the stored set was provided by the reader and not read from the storage
+		assertEquals("localhost", storedValue("some-set", "host"));
+		assertEquals("6969", storedValue("some-set", "port"));
+	}
+
+	@Test
+	public void merge_unexpectedException() {
+		AtomicBoolean failRead = new AtomicBoolean(true);
+		Function<String, Try<Option<PropertySet>>> reader = name -> {
+			if (failRead.getAndSet(false)) {
+				throw new IllegalStateException("Unexpected");
+			}
+			return mockPropertiesStorage.get(name);
+		};
+		WriteBatcher failingBatcher = new WriteBatcher(reader, mockPropertiesStorage::create, None(), 5, 100);
+		try {
+			assertFailure(failingBatcher.merge(propertySet("some-set", "host", "localhost")));
+			// the worker survived the exception
+			assertSuccess(failingBatcher.merge(propertySet("some-set", "port", "6969")));
+		} finally {
+			failingBatcher.close();
+		}
+		assertEquals("6969", storedValue("some-set", "port"));
+	}
+
+	@Test
+	public void delete() {
+		assertSuccess(writeBatcher.store(propertySet("some-set", "host", "localhost")));
+		assertSuccess(writeBatcher.delete("some-set"));
+		assertFalse(mockPropertiesStorage.get("some-set").orNull().isDefined());
+	}
+
+	@Test
+	public void merge_concurrently() throws Exception {
+		// a longer delay makes sure the concurrent writes end up in the same batches
+		WriteBatcher slowBatcher = new WriteBatcher(mockPropertiesStorage::get, mockPropertiesStorage::create, None(), 50, 100);
+		ExecutorService executor = Executors.newFixedThreadPool(10);
+		try {
+			List<Future<Try<Unit>>> results = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				PropertySet set = propertySet("some-set", "key-" + i, "value-" + i);
+				results.add(executor.submit(() -> slowBatcher.merge(set)));
+			}
+			for (Future<Try<Unit>> result : results) {
+				assertSuccess(result.get());
+			}
+		} finally {
+			executor.shutdown();
+			slowBatcher.close();
+		}
+		for (int i = 0; i < 50; i++) {
+			assertEquals("value-" + i, storedValue("some-set", "key-" + i));
+		}
+		// one session per batch, not per write
+		assertTrue(mockPropertiesStorage.createCount() < 50);
+	}
+
+	@Test
+	public void store_afterClose() {
+		writeBatcher.close();
+		assertFailure(writeBatcher.store(propertySet("some-set", "host", "localhost")));
+	}
+
+	private String storedValue(String name, String key) {
+		return mockPropertiesStorage.get(name).orNull().get().asMap().get(key);
+	}
+
+	private static PropertySet propertySet(String name, String key, String value) {
+		PropertySet set = PropertySet.apply(name);
+		set.set(key, value);
+		return set;
+	}
+}